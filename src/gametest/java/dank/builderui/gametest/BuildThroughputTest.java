@@ -0,0 +1,219 @@
+package dank.builderui.gametest;
+
+import dank.builderui.BuilderUIMod;
+import dank.builderui.util.BuildConfig;
+import dank.builderui.util.BuildJob;
+import dank.builderui.util.BuildQueue;
+import dank.builderui.util.BuildSize;
+import dank.builderui.util.BuildType;
+import dank.builderui.util.BuilderUISettings;
+import dank.builderui.util.StructureBuilder;
+import dank.builderui.util.UndoManager;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Builds every structure at EXTRA_LARGE on a headless server, undoes it, and checks what the
+ * server paid for it: milliseconds per tick while the build ran, blocks placed per millisecond
+ * of tick time, and heap retained afterwards.
+ *
+ * Each case runs in its own batch so builds never share the queue. Admission control is turned
+ * off, so a slow test server cannot shrink the budget or refuse a build and skew the numbers.
+ * Thresholds are read from
+ * system properties, e.g. {@code -Dbuilderui.gametest.maxMsPerTick=30}:
+ * <ul>
+ *   <li>{@code builderui.gametest.maxMsPerTick}: highest average tick time during a build (default 50)</li>
+ *   <li>{@code builderui.gametest.minBlocksPerMs}: lowest placement rate (default 0, off)</li>
+ *   <li>{@code builderui.gametest.maxHeapGrowthMb}: most heap a build and its undo may retain (default 64)</li>
+ * </ul>
+ */
+public class BuildThroughputTest implements FabricGameTest {
+    private static final int TICK_LIMIT = 6000;
+    private static final double MAX_MS_PER_TICK = doubleProperty("builderui.gametest.maxMsPerTick", 50);
+    private static final double MIN_BLOCKS_PER_MS = doubleProperty("builderui.gametest.minBlocksPerMs", 0);
+    private static final double MAX_HEAP_GROWTH_MB = doubleProperty("builderui.gametest.maxHeapGrowthMb", 64);
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_house", tickLimit = TICK_LIMIT)
+    public void house(TestContext context) {
+        buildAndUndo(context, BuildType.HOUSE);
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_tower", tickLimit = TICK_LIMIT)
+    public void tower(TestContext context) {
+        buildAndUndo(context, BuildType.TOWER);
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_mansion", tickLimit = TICK_LIMIT)
+    public void mansion(TestContext context) {
+        buildAndUndo(context, BuildType.MANSION);
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_farm", tickLimit = TICK_LIMIT)
+    public void farm(TestContext context) {
+        buildAndUndo(context, BuildType.FARM);
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_castle", tickLimit = TICK_LIMIT)
+    public void castle(TestContext context) {
+        buildAndUndo(context, BuildType.CASTLE);
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_bridge", tickLimit = TICK_LIMIT)
+    public void bridge(TestContext context) {
+        buildAndUndo(context, BuildType.BRIDGE);
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_fountain", tickLimit = TICK_LIMIT)
+    public void fountain(TestContext context) {
+        buildAndUndo(context, BuildType.FOUNTAIN);
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_treehouse", tickLimit = TICK_LIMIT)
+    public void treehouse(TestContext context) {
+        buildAndUndo(context, BuildType.TREEHOUSE);
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_wall", tickLimit = TICK_LIMIT)
+    public void wall(TestContext context) {
+        buildAndUndo(context, BuildType.WALL);
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "builderui_road", tickLimit = TICK_LIMIT)
+    public void road(TestContext context) {
+        buildAndUndo(context, BuildType.ROAD);
+    }
+
+    private static void buildAndUndo(TestContext context, BuildType buildType) {
+        ServerWorld world = context.getWorld();
+        UUID playerId = UUID.nameUUIDFromBytes(("builderui-gametest-" + buildType).getBytes(StandardCharsets.UTF_8));
+        long heapBefore = usedHeap();
+        BuilderUISettings.get().setAdmissionMsptThreshold(0);
+
+        BuildConfig config = new BuildConfig(buildType);
+        config.setSize(BuildSize.EXTRA_LARGE);
+        BuildJob build = StructureBuilder.build(world, context.getAbsolutePos(new BlockPos(1, 1, 1)), playerId, config);
+        Run run = new Run(context, buildType, playerId, build, heapBefore);
+        context.runAtEveryTick(run::tick);
+    }
+
+    /**
+     * Follows one case through its build and undo, one server tick at a time.
+     */
+    private static class Run {
+        private final TestContext context;
+        private final BuildType buildType;
+        private final UUID playerId;
+        private final BuildJob build;
+        private final long heapBefore;
+        private boolean undoQueued;
+        private boolean done;
+        private int buildTicks;
+        private long buildNanos;
+        private long maxTickNanos;
+        private int undoTicks;
+        private long undoNanos;
+
+        Run(TestContext context, BuildType buildType, UUID playerId, BuildJob build, long heapBefore) {
+            this.context = context;
+            this.buildType = buildType;
+            this.playerId = playerId;
+            this.build = build;
+            this.heapBefore = heapBefore;
+        }
+
+        void tick() {
+            if (done) {
+                return;
+            }
+            MinecraftServer server = context.getWorld().getServer();
+            // This runs during the next tick, so the slot of the previous one is complete
+            long lastTick = server.lastTickLengths[Math.floorMod(server.getTicks() - 1, server.lastTickLengths.length)];
+
+            if (!undoQueued) {
+                if (build.getStatus() == BuildJob.Status.RUNNING || build.isFinished()) {
+                    buildTicks++;
+                    buildNanos += lastTick;
+                    maxTickNanos = Math.max(maxTickNanos, lastTick);
+                }
+                if (!build.isFinished()) {
+                    return;
+                }
+                if (build.getStatus() != BuildJob.Status.COMPLETED) {
+                    throw new GameTestException(buildType + " build did not complete: " + build.getStatus());
+                }
+                if (!UndoManager.undo(playerId, context.getWorld())) {
+                    throw new GameTestException(buildType + " build was not recorded for undo");
+                }
+                undoQueued = true;
+                return;
+            }
+
+            undoTicks++;
+            undoNanos += lastTick;
+            if (!BuildQueue.getJobs(playerId).isEmpty()) {
+                return;
+            }
+            if (!UndoManager.canRedo(playerId)) {
+                throw new GameTestException(buildType + " undo did not finish");
+            }
+            done = true;
+            UndoManager.clearHistory(playerId);
+            check(usedHeap() - heapBefore);
+            context.complete();
+        }
+
+        private void check(long heapGrowth) {
+            double msPerTick = buildTicks == 0 ? 0 : buildNanos / 1_000_000.0 / buildTicks;
+            double blocksPerMs = buildNanos == 0 ? 0 : build.getPlacedBlocks() / (buildNanos / 1_000_000.0);
+            double heapGrowthMb = heapGrowth / (1024.0 * 1024.0);
+            BuilderUIMod.LOGGER.info(String.format(
+                    "[gametest] %s: %d blocks placed in %d ticks, %.2f ms/tick (max %.2f), %.1f blocks/ms, "
+                            + "undo %d ticks (%.2f ms/tick), heap %+.1f MB",
+                    buildType, build.getPlacedBlocks(), buildTicks, msPerTick, maxTickNanos / 1_000_000.0,
+                    blocksPerMs, undoTicks, undoTicks == 0 ? 0 : undoNanos / 1_000_000.0 / undoTicks, heapGrowthMb));
+
+            if (msPerTick > MAX_MS_PER_TICK) {
+                throw new GameTestException(String.format("%s averaged %.2f ms/tick, limit is %.2f",
+                        buildType, msPerTick, MAX_MS_PER_TICK));
+            }
+            if (blocksPerMs < MIN_BLOCKS_PER_MS) {
+                throw new GameTestException(String.format("%s placed %.1f blocks/ms, minimum is %.1f",
+                        buildType, blocksPerMs, MIN_BLOCKS_PER_MS));
+            }
+            if (heapGrowthMb > MAX_HEAP_GROWTH_MB) {
+                throw new GameTestException(String.format("%s retained %.1f MB of heap, limit is %.1f",
+                        buildType, heapGrowthMb, MAX_HEAP_GROWTH_MB));
+            }
+        }
+    }
+
+    /**
+     * Returns the heap in use after a collection, so it reflects retained objects rather than garbage.
+     */
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            BuilderUIMod.LOGGER.warn("Ignoring invalid value '{}' for {}", value, name);
+            return defaultValue;
+        }
+    }
+}
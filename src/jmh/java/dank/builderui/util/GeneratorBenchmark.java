@@ -0,0 +1,73 @@
+package dank.builderui.util;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.util.BlockMirror;
+import net.minecraft.util.BlockRotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of every built-in generator at every size, without a world.
+ * {@code generate} compiles the plan, {@code transform} rotates and mirrors it, and
+ * {@code place} applies it to an {@link InMemoryBlockSink} while recording undo the way
+ * {@link BuildJob} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeneratorBenchmark {
+    @Param({"HOUSE", "TOWER", "MANSION", "FARM", "CASTLE", "BRIDGE", "FOUNTAIN", "TREEHOUSE", "WALL", "ROAD"})
+    public BuildType buildType;
+
+    @Param({"SMALL", "MEDIUM", "LARGE", "EXTRA_LARGE"})
+    public BuildSize size;
+
+    private BlockPlanCache.Key key;
+    private BlockPlan plan;
+
+    @Setup
+    public void setup() {
+        MinecraftBootstrap.init();
+        BuildConfig config = new BuildConfig(buildType);
+        config.setSize(size);
+        key = BlockPlanCache.Key.of(config);
+        plan = StructureBuilder.compilePlan(key);
+    }
+
+    @Benchmark
+    public BlockPlan generate() {
+        return StructureBuilder.compilePlan(key);
+    }
+
+    @Benchmark
+    public BlockPlan transform() {
+        return plan.transform(BlockMirror.LEFT_RIGHT, BlockRotation.CLOCKWISE_90);
+    }
+
+    @Benchmark
+    public UndoSnapshot place() {
+        int count = plan.size();
+        long[] positions = new long[count];
+        BlockState[] states = new BlockState[count];
+        plan.translateInto(positions, 0, 1000, 64, -1000);
+        plan.statesInto(states, 0);
+
+        InMemoryBlockSink sink = new InMemoryBlockSink(count);
+        UndoSnapshot.Builder undo = new UndoSnapshot.Builder();
+        for (int i = 0; i < count; i++) {
+            BlockState previous = sink.set(positions[i], states[i]);
+            if (previous != states[i]) {
+                undo.add(positions[i], previous);
+            }
+        }
+        return undo.build();
+    }
+}
@@ -0,0 +1,24 @@
+package dank.builderui.util;
+
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+
+/**
+ * Stand-in for a world in benchmarks: block states by packed position, air everywhere else.
+ */
+final class InMemoryBlockSink {
+    private final Long2ReferenceOpenHashMap<BlockState> blocks;
+
+    InMemoryBlockSink(int expectedSize) {
+        blocks = new Long2ReferenceOpenHashMap<>(expectedSize);
+        blocks.defaultReturnValue(Blocks.AIR.getDefaultState());
+    }
+
+    /**
+     * Sets a block and returns the state it replaced.
+     */
+    BlockState set(long pos, BlockState state) {
+        return blocks.put(pos, state);
+    }
+}
@@ -0,0 +1,22 @@
+package dank.builderui.util;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+
+/**
+ * Loads the vanilla registries so benchmarks can use blocks and states without a game or server.
+ */
+final class MinecraftBootstrap {
+    private static boolean initialized;
+
+    private MinecraftBootstrap() {
+    }
+
+    static synchronized void init() {
+        if (!initialized) {
+            SharedConstants.createGameVersion();
+            Bootstrap.initialize();
+            initialized = true;
+        }
+    }
+}
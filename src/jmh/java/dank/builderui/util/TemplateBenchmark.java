@@ -0,0 +1,94 @@
+package dank.builderui.util;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Template transforms and the {@link TemplateCodec} format that {@link CustomStructureManager}
+ * saves and loads, on a hollow stone building with a cobblestone floor and scattered brick pillars.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateBenchmark {
+    @Param({"32", "96"})
+    public int side;
+
+    private StructureTemplate template;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        MinecraftBootstrap.init();
+        BlockState wall = Blocks.STONE.getDefaultState();
+        BlockState floor = Blocks.COBBLESTONE.getDefaultState();
+        BlockState pillar = Blocks.STONE_BRICKS.getDefaultState();
+        Random random = new Random(42);
+
+        template = new StructureTemplate("benchmark", side, side, side);
+        for (int y = 0; y < side; y++) {
+            for (int z = 0; z < side; z++) {
+                for (int x = 0; x < side; x++) {
+                    boolean shell = x == 0 || z == 0 || x == side - 1 || z == side - 1 || y == side - 1;
+                    if (y == 0) {
+                        template.setBlock(x, y, z, floor);
+                    } else if (shell) {
+                        template.setBlock(x, y, z, wall);
+                    } else if (x % 8 == 4 && z % 8 == 4 && random.nextInt(4) != 0) {
+                        template.setBlock(x, y, z, pillar);
+                    }
+                }
+            }
+        }
+        template.prepareForConcurrentReads();
+        encoded = write();
+    }
+
+    @Benchmark
+    public StructureTemplate scaleUp() {
+        return template.withScale(2.0f);
+    }
+
+    @Benchmark
+    public StructureTemplate scaleDown() {
+        return template.withScale(0.5f);
+    }
+
+    @Benchmark
+    public StructureTemplate material() {
+        return template.withMaterial(MaterialType.QUARTZ);
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TemplateCodec.write(template, out, true);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeUncompressed() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TemplateCodec.write(template, out, false);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public StructureTemplate read() throws IOException {
+        return TemplateCodec.read(new ByteArrayInputStream(encoded));
+    }
+}
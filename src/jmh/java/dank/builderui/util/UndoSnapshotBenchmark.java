@@ -0,0 +1,79 @@
+package dank.builderui.util;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording and restoring undo snapshots of terrain-like regions (stone, then dirt, then air),
+ * and the NBT round trip that moves older history entries to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UndoSnapshotBenchmark {
+    @Param({"10000", "1000000"})
+    public int blocks;
+
+    private long[] positions;
+    private BlockState[] states;
+    private UndoSnapshot snapshot;
+    private NbtCompound nbt;
+
+    @Setup
+    public void setup() {
+        MinecraftBootstrap.init();
+        int side = (int) Math.ceil(Math.cbrt(blocks));
+        positions = new long[blocks];
+        states = new BlockState[blocks];
+        BlockState stone = Blocks.STONE.getDefaultState();
+        BlockState dirt = Blocks.DIRT.getDefaultState();
+        BlockState air = Blocks.AIR.getDefaultState();
+        for (int i = 0; i < blocks; i++) {
+            int x = i % side;
+            int z = (i / side) % side;
+            int y = i / side / side;
+            positions[i] = BlockPos.asLong(x, y, z);
+            states[i] = y < side / 3 ? stone : y < side * 2 / 3 ? dirt : air;
+        }
+        snapshot = record();
+        nbt = snapshot.toNbt();
+    }
+
+    @Benchmark
+    public UndoSnapshot record() {
+        UndoSnapshot.Builder builder = new UndoSnapshot.Builder();
+        for (int i = 0; i < positions.length; i++) {
+            builder.add(positions[i], states[i]);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public InMemoryBlockSink restore() {
+        InMemoryBlockSink sink = new InMemoryBlockSink(snapshot.getBlockCount());
+        snapshot.forEach((x, y, z, state) -> sink.set(BlockPos.asLong(x, y, z), state));
+        return sink;
+    }
+
+    @Benchmark
+    public NbtCompound toNbt() {
+        return snapshot.toNbt();
+    }
+
+    @Benchmark
+    public UndoSnapshot fromNbt() {
+        return UndoSnapshot.fromNbt(nbt);
+    }
+}
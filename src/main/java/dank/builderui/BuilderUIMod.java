@@ -1,6 +1,15 @@
 package dank.builderui;
 
+import dank.builderui.command.BuilderCommands;
+import dank.builderui.network.BuilderNetworking;
+import dank.builderui.util.BuildMetrics;
+import dank.builderui.util.BuildQueue;
+import dank.builderui.util.BuilderUISettings;
+import dank.builderui.util.UndoManager;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +37,25 @@ public class BuilderUIMod implements ModInitializer {
 
     @Override
     public void onInitialize() {
+        BuilderUISettings.load();
+
+        // Place queued build blocks a slice at a time after each server tick
+        ServerTickEvents.END_SERVER_TICK.register(BuildQueue::tick);
+        ServerTickEvents.END_SERVER_TICK.register(BuildMetrics::tick);
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> BuildQueue.clear());
+
+        // Undo history lives in the world save and is flushed to disk when it goes idle
+        ServerLifecycleEvents.SERVER_STARTED.register(UndoManager::onServerStarted);
+        ServerLifecycleEvents.SERVER_STOPPED.register(UndoManager::onServerStopped);
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            // Builds record history when they finish, so stop them before it is written out
+            BuildQueue.cancelAll(handler.player.getUuid());
+            UndoManager.onPlayerDisconnect(handler.player.getUuid());
+        });
+
+        BuilderNetworking.registerServerReceivers();
+        BuilderCommands.register();
+
         LOGGER.info("Builder UI Mod initialized!");
         LOGGER.info("Press 'B' to open the Builder Menu!");
     }
@@ -0,0 +1,111 @@
+package dank.builderui.client;
+
+import dank.builderui.network.BuilderNetworking;
+import dank.builderui.util.BuildConfig;
+import dank.builderui.util.BuildQueue;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
+
+/**
+ * Client side of the builder network channels.
+ * Sends build, undo, redo and cancel requests and shows the server's acknowledgements.
+ */
+public class BuilderClientNetworking {
+    private static long lastBuildId = 0;
+    private static double serverBlocksPerSecond = 0;
+
+    /**
+     * Registers the client-side receivers. Called from the client mod initializer.
+     */
+    public static void register() {
+        ClientPlayNetworking.registerGlobalReceiver(BuilderNetworking.BUILD_ACK, (client, handler, buf, responseSender) -> {
+            boolean accepted = buf.readBoolean();
+            long buildId = buf.readVarLong();
+            String message = buf.readString();
+            float blocksPerSecond = buf.readFloat();
+            client.execute(() -> {
+                serverBlocksPerSecond = blocksPerSecond;
+                if (accepted) {
+                    lastBuildId = buildId;
+                }
+                if (client.player != null) {
+                    client.player.sendMessage(Text.of((accepted ? "§a" : "§c") + message), false);
+                }
+            });
+        });
+    }
+
+    /**
+     * Asks the server to build the given configuration.
+     * Returns false if the server does not have the mod installed.
+     */
+    public static boolean sendBuildRequest(BuildConfig config) {
+        if (!ClientPlayNetworking.canSend(BuilderNetworking.BUILD_REQUEST)) {
+            return false;
+        }
+        PacketByteBuf buf = PacketByteBufs.create();
+        config.write(buf);
+        ClientPlayNetworking.send(BuilderNetworking.BUILD_REQUEST, buf);
+        return true;
+    }
+
+    /**
+     * Asks the server to undo the player's last build.
+     * Returns false if the server does not have the mod installed.
+     */
+    public static boolean sendUndoRequest() {
+        return sendEmpty(BuilderNetworking.UNDO_REQUEST);
+    }
+
+    /**
+     * Asks the server to redo the player's last undone build.
+     * Returns false if the server does not have the mod installed.
+     */
+    public static boolean sendRedoRequest() {
+        return sendEmpty(BuilderNetworking.REDO_REQUEST);
+    }
+
+    /**
+     * Asks the server to cancel the player's queued and running builds.
+     * Returns false if the server does not have the mod installed.
+     */
+    public static boolean sendCancelRequest() {
+        return sendEmpty(BuilderNetworking.CANCEL_REQUEST);
+    }
+
+    private static boolean sendEmpty(Identifier channel) {
+        if (!ClientPlayNetworking.canSend(channel)) {
+            return false;
+        }
+        ClientPlayNetworking.send(channel, PacketByteBufs.empty());
+        return true;
+    }
+
+    /**
+     * Returns the id of the last build the server accepted, or 0 if none.
+     */
+    public static long getLastBuildId() {
+        return lastBuildId;
+    }
+
+    /**
+     * Returns the server's placement throughput in blocks per second, as reported with the last
+     * build acknowledgement. Before the first build this is the local estimate.
+     */
+    public static double getBlocksPerSecond() {
+        return serverBlocksPerSecond > 0 ? serverBlocksPerSecond : BuildQueue.getBlocksPerSecond();
+    }
+
+    /**
+     * Tells the player that the server cannot handle builder requests.
+     */
+    public static void showServerMissing(MinecraftClient client) {
+        if (client.player != null) {
+            client.player.sendMessage(Text.of("§cThe server does not have Builder UI installed!"), false);
+        }
+    }
+}
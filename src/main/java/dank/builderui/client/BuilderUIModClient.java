@@ -40,6 +40,8 @@ public class BuilderUIModClient implements ClientModInitializer {
                 "category.builderui.controls"
         ));
 
+        BuilderClientNetworking.register();
+
         // Register tick event to handle key presses
         ClientTickEvents.END_CLIENT_TICK.register(client -> {
             while (openMenuKey.wasPressed()) {
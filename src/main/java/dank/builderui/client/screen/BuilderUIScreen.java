@@ -1,12 +1,15 @@
 package dank.builderui.client.screen;
 
 import com.mojang.blaze3d.systems.RenderSystem;
+import dank.builderui.client.BuilderClientNetworking;
 import dank.builderui.util.*;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.widget.ButtonWidget;
 import net.minecraft.text.Text;
+import net.minecraft.util.BlockMirror;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
 
 import java.util.*;
 
@@ -77,16 +80,38 @@ public class BuilderUIScreen extends Screen {
         ButtonWidget undoButton = ButtonWidget.builder(
             Text.of("Undo Last Build"),
             btn -> {
-                if (UndoManager.canUndo(client.player.getUuid())) {
-                    UndoManager.undo(client.player.getUuid(), client.player.getWorld());
-                    client.player.sendMessage(Text.of("§aUndo successful!"), false);
-                } else {
-                    client.player.sendMessage(Text.of("§cNothing to undo!"), false);
+                // The server replies with the result
+                if (!BuilderClientNetworking.sendUndoRequest()) {
+                    BuilderClientNetworking.showServerMissing(client);
                 }
             }
         ).dimensions(centerX - BUTTON_WIDTH / 2, y, BUTTON_WIDTH, BUTTON_HEIGHT).build();
         addDrawableChild(undoButton);
         
+        // Add redo button
+        y += BUTTON_HEIGHT + BUTTON_SPACING;
+        ButtonWidget redoButton = ButtonWidget.builder(
+            Text.of("Redo Last Undo"),
+            btn -> {
+                if (!BuilderClientNetworking.sendRedoRequest()) {
+                    BuilderClientNetworking.showServerMissing(client);
+                }
+            }
+        ).dimensions(centerX - BUTTON_WIDTH / 2, y, BUTTON_WIDTH, BUTTON_HEIGHT).build();
+        addDrawableChild(redoButton);
+        
+        // Add cancel button for builds still being placed
+        y += BUTTON_HEIGHT + BUTTON_SPACING;
+        ButtonWidget cancelButton = ButtonWidget.builder(
+            Text.of("Cancel Builds"),
+            btn -> {
+                if (!BuilderClientNetworking.sendCancelRequest()) {
+                    BuilderClientNetworking.showServerMissing(client);
+                }
+            }
+        ).dimensions(centerX - BUTTON_WIDTH / 2, y, BUTTON_WIDTH, BUTTON_HEIGHT).build();
+        addDrawableChild(cancelButton);
+        
         // Add close button
         y += BUTTON_HEIGHT + CATEGORY_SPACING;
         ButtonWidget closeButton = ButtonWidget.builder(
@@ -187,6 +212,14 @@ public class BuilderUIScreen extends Screen {
         addDrawableChild(rotateRightButton);
         y += BUTTON_HEIGHT + BUTTON_SPACING;
         
+        // Mirror selection
+        ButtonWidget mirrorButton = ButtonWidget.builder(
+            Text.of("Mirror: " + getMirrorName(currentConfig.getMirror())),
+            btn -> cycleMirror()
+        ).dimensions(centerX - BUTTON_WIDTH / 2, y, BUTTON_WIDTH, BUTTON_HEIGHT).build();
+        addDrawableChild(mirrorButton);
+        y += BUTTON_HEIGHT + BUTTON_SPACING;
+        
         // Show info button
         y += CATEGORY_SPACING;
         ButtonWidget infoButton = ButtonWidget.builder(
@@ -234,6 +267,21 @@ public class BuilderUIScreen extends Screen {
         clearAndInit();
     }
 
+    private void cycleMirror() {
+        BlockMirror[] mirrors = BlockMirror.values();
+        int nextIndex = (currentConfig.getMirror().ordinal() + 1) % mirrors.length;
+        currentConfig.setMirror(mirrors[nextIndex]);
+        clearAndInit();
+    }
+
+    private static String getMirrorName(BlockMirror mirror) {
+        return switch (mirror) {
+            case NONE -> "None";
+            case LEFT_RIGHT -> "Left/Right";
+            case FRONT_BACK -> "Front/Back";
+        };
+    }
+
     private void cycleSize() {
         BuildSize[] sizes = BuildSize.values();
         int currentIndex = currentConfig.getSize().ordinal();
@@ -251,34 +299,51 @@ public class BuilderUIScreen extends Screen {
     }
 
     private void showBuildInfo() {
-        if (currentConfig != null) {
-            BuildInfo info = StructureBuilder.getBuildInfo(
-                currentConfig.getBuildType(), 
-                currentConfig.getSize()
-            );
-            
-            StringBuilder message = new StringBuilder();
-            message.append("§e").append(info.getBuildType().getDisplayName()).append("\n");
-            message.append("§7").append(info.getDescription()).append("\n");
-            message.append("§fTotal Blocks: §a").append(info.getTotalBlocks()).append("\n");
-            message.append("§fEstimated Time: §a").append(info.getFormattedTime()).append("\n");
-            message.append("§fBlocks Needed:\n");
-            
-            for (Map.Entry<String, Integer> entry : info.getBlocksNeeded().entrySet()) {
-                message.append("  §7- §f").append(entry.getKey()).append(": §a").append(entry.getValue()).append("\n");
-            }
-            
-            client.player.sendMessage(Text.of(message.toString()), false);
+        if (currentConfig != null && client.player != null && client.world != null) {
+            BlockPos origin = client.player.getBlockPos().add(
+                currentConfig.getOffsetX(), currentConfig.getOffsetY(), currentConfig.getOffsetZ());
+            // Large plans take a while to compile, so that happens off the render thread
+            StructureBuilder.getBuildInfoAsync(
+                currentConfig,
+                client.world,
+                origin,
+                BuilderClientNetworking.getBlocksPerSecond(),
+                client
+            ).whenCompleteAsync((info, failure) -> {
+                if (client.player == null) {
+                    return;
+                }
+                if (failure != null) {
+                    client.player.sendMessage(Text.of("§cCould not calculate build info"), false);
+                    return;
+                }
+                sendBuildInfo(info);
+            }, client);
+        }
+    }
+
+    private void sendBuildInfo(BuildInfo info) {
+        StringBuilder message = new StringBuilder();
+        message.append("§e").append(info.getBuildType().getDisplayName()).append("\n");
+        message.append("§7").append(info.getDescription()).append("\n");
+        message.append("§fTotal Blocks: §a").append(info.getTotalBlocks()).append("\n");
+        message.append("§fBlocks Changed Here: §a").append(info.getChangedBlocks()).append("\n");
+        message.append("§fEstimated Time: §a").append(info.getFormattedTime()).append("\n");
+        message.append("§fBlocks Needed:\n");
+        
+        for (Map.Entry<String, Integer> entry : info.getBlocksNeeded().entrySet()) {
+            message.append("  §7- §f").append(entry.getKey()).append(": §a").append(entry.getValue()).append("\n");
         }
+        
+        client.player.sendMessage(Text.of(message.toString()), false);
     }
 
     private void confirmBuild() {
         if (currentConfig != null && client.player != null) {
-            // Show confirmation
-            client.player.sendMessage(Text.of("§aBuilding " + currentConfig.getBuildType().getDisplayName() + "..."), false);
-            
-            // Execute build
-            StructureBuilder.build(client.player, currentConfig);
+            // Send the build to the server; it acknowledges once the build is queued
+            if (!BuilderClientNetworking.sendBuildRequest(currentConfig)) {
+                BuilderClientNetworking.showServerMissing(client);
+            }
             
             // Close screen
             client.setScreen(null);
@@ -0,0 +1,117 @@
+package dank.builderui.command;
+
+import dank.builderui.util.BuildMetrics;
+import dank.builderui.util.BuildQueue;
+import dank.builderui.util.BuildType;
+import dank.builderui.util.TickHealth;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.minecraft.command.argument.EntityArgumentType;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Server commands of the mod.
+ * <ul>
+ *   <li>{@code /builderui stats}: build pipeline metrics for the whole server</li>
+ *   <li>{@code /builderui stats <player>}: the same for one player</li>
+ *   <li>{@code /builderui stats reset}: starts counting from zero</li>
+ * </ul>
+ * All of them need operator permission (level 2).
+ */
+public class BuilderCommands {
+
+    /**
+     * Registers the commands. Called from the common mod initializer.
+     */
+    public static void register() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> dispatcher.register(
+                CommandManager.literal("builderui")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .then(CommandManager.literal("stats")
+                                .executes(context -> showStats(context.getSource(), null))
+                                .then(CommandManager.literal("reset")
+                                        .executes(context -> resetStats(context.getSource())))
+                                .then(CommandManager.argument("player", EntityArgumentType.player())
+                                        .executes(context -> showStats(context.getSource(),
+                                                EntityArgumentType.getPlayer(context, "player")))))));
+    }
+
+    private static int showStats(ServerCommandSource source, ServerPlayerEntity player) {
+        BuildMetrics.Counters counters = player == null
+                ? BuildMetrics.getTotal()
+                : BuildMetrics.getByPlayer(player.getUuid());
+        if (counters == null) {
+            source.sendError(Text.of(player.getName().getString() + " has not built anything yet"));
+            return 0;
+        }
+
+        List<String> lines = new ArrayList<>();
+        long minutes = (System.currentTimeMillis() - BuildMetrics.getStartedMillis()) / 60_000;
+        lines.add("§eBuilder UI stats" + (player != null ? " for " + player.getName().getString() : "")
+                + " §7(last " + minutes + " min)");
+        lines.add("§fBuilds: §a" + counters.getBuilds() + "§7 (" + counters.getCancelled() + " cancelled, "
+                + counters.getRestores() + " undos/redos)");
+        lines.add("§fBlocks: §a" + counters.getBlocksPlaced() + " placed§7, "
+                + counters.getBlocksSkipped() + " unchanged");
+        lines.add("§fGeneration: " + formatNanos(counters.getGenerationNanos()));
+        lines.add("§fApply: " + formatNanos(counters.getApplyNanos()));
+        lines.add("§fUndo snapshots: " + formatBytes(counters.getUndoSnapshotBytes()));
+
+        if (player == null) {
+            lines.add(String.format(Locale.ROOT, "§fQueue: §a%d now§7, avg %.1f, max %d",
+                    BuildQueue.getQueueDepth(), BuildMetrics.getQueueDepth().getMean(), BuildMetrics.getMaxQueueDepth()));
+            lines.add(String.format(Locale.ROOT, "§fServer: %s%.1f ms/tick§7, build budget %d%%",
+                    TickHealth.isOverloaded() ? "§c" : "§a", TickHealth.getAverageMspt(),
+                    Math.round(TickHealth.getBudgetScale() * 100)));
+            for (BuildMetrics.IoOperation operation : BuildMetrics.IoOperation.values()) {
+                BuildMetrics.Histogram latency = BuildMetrics.getIoNanos(operation);
+                if (latency.getCount() > 0) {
+                    lines.add("§fTemplate " + operation.name().toLowerCase(Locale.ROOT) + ": " + formatNanos(latency));
+                }
+            }
+            for (BuildType type : BuildType.values()) {
+                BuildMetrics.Counters typeCounters = BuildMetrics.getByType(type);
+                if (typeCounters.getBuilds() + typeCounters.getCancelled() + typeCounters.getRestores() > 0) {
+                    lines.add(String.format(Locale.ROOT,
+                            "  §7- §f%s: §a%d builds§7, %d blocks, generation avg %.2f ms, apply avg %.2f ms",
+                            type.getDisplayName(), typeCounters.getBuilds(), typeCounters.getBlocksPlaced(),
+                            typeCounters.getGenerationNanos().getMean() / 1e6,
+                            typeCounters.getApplyNanos().getMean() / 1e6));
+                }
+            }
+        }
+
+        for (String line : lines) {
+            source.sendFeedback(() -> Text.of(line), false);
+        }
+        return 1;
+    }
+
+    private static int resetStats(ServerCommandSource source) {
+        BuildMetrics.reset();
+        source.sendFeedback(() -> Text.of("§aBuilder UI stats reset"), true);
+        return 1;
+    }
+
+    private static String formatNanos(BuildMetrics.Histogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "§7none";
+        }
+        return String.format(Locale.ROOT, "§aavg %.2f ms§7, p95 under %.2f ms, %d samples",
+                histogram.getMean() / 1e6, histogram.getQuantileBound(0.95) / 1e6, histogram.getCount());
+    }
+
+    private static String formatBytes(BuildMetrics.Histogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "§7none";
+        }
+        return String.format(Locale.ROOT, "§aavg %.1f KB§7, %d recorded, %.1f KB total",
+                histogram.getMean() / 1024, histogram.getCount(), histogram.getSum() / 1024.0);
+    }
+}
@@ -0,0 +1,137 @@
+package dank.builderui.network;
+
+import dank.builderui.BuilderUIMod;
+import dank.builderui.util.BlockPlan;
+import dank.builderui.util.BlockPlanCache;
+import dank.builderui.util.BuildConfig;
+import dank.builderui.util.BuildJob;
+import dank.builderui.util.BuildQueue;
+import dank.builderui.util.BuildType;
+import dank.builderui.util.BuilderUISettings;
+import dank.builderui.util.StructureBuilder;
+import dank.builderui.util.TickHealth;
+import dank.builderui.util.UndoManager;
+import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
+
+/**
+ * Network channels between the builder menu and the server.
+ *
+ * The client only sends requests; all placement and undo work runs on the server thread.
+ * <ul>
+ *   <li>{@link #BUILD_REQUEST} (C2S): a compact {@link BuildConfig}</li>
+ *   <li>{@link #BUILD_ACK} (S2C): whether the build was queued, its build id, a message and the
+ *       server's measured placement throughput</li>
+ *   <li>{@link #UNDO_REQUEST} (C2S): undo the player's last build</li>
+ *   <li>{@link #REDO_REQUEST} (C2S): redo the player's last undone build</li>
+ *   <li>{@link #CANCEL_REQUEST} (C2S): cancel the player's queued and running builds, undos and redos</li>
+ * </ul>
+ */
+public class BuilderNetworking {
+    public static final Identifier BUILD_REQUEST = new Identifier(BuilderUIMod.MOD_ID, "build_request");
+    public static final Identifier BUILD_ACK = new Identifier(BuilderUIMod.MOD_ID, "build_ack");
+    public static final Identifier UNDO_REQUEST = new Identifier(BuilderUIMod.MOD_ID, "undo_request");
+    public static final Identifier REDO_REQUEST = new Identifier(BuilderUIMod.MOD_ID, "redo_request");
+    public static final Identifier CANCEL_REQUEST = new Identifier(BuilderUIMod.MOD_ID, "cancel_request");
+
+    /**
+     * Registers the server-side receivers. Called from the common mod initializer.
+     */
+    public static void registerServerReceivers() {
+        ServerPlayNetworking.registerGlobalReceiver(BUILD_REQUEST, (server, player, handler, buf, responseSender) -> {
+            // The buffer is released after this handler returns, so decode before switching threads
+            BuildConfig config;
+            try {
+                config = BuildConfig.read(buf);
+            } catch (RuntimeException e) {
+                BuilderUIMod.LOGGER.warn("Rejected malformed build request from {}: {}",
+                        player.getName().getString(), e.getMessage());
+                server.execute(() -> sendAck(player, false, 0, "Invalid build request"));
+                return;
+            }
+            server.execute(() -> handleBuildRequest(player, config));
+        });
+
+        ServerPlayNetworking.registerGlobalReceiver(UNDO_REQUEST, (server, player, handler, buf, responseSender) ->
+                server.execute(() -> {
+                    // Progress and the result are reported by the build queue
+                    if (!UndoManager.undo(player.getUuid(), player.getWorld())) {
+                        player.sendMessage(Text.of("§cNothing to undo!"), false);
+                    }
+                }));
+
+        ServerPlayNetworking.registerGlobalReceiver(REDO_REQUEST, (server, player, handler, buf, responseSender) ->
+                server.execute(() -> {
+                    if (!UndoManager.redo(player.getUuid(), player.getWorld())) {
+                        player.sendMessage(Text.of("§cNothing to redo!"), false);
+                    }
+                }));
+
+        ServerPlayNetworking.registerGlobalReceiver(CANCEL_REQUEST, (server, player, handler, buf, responseSender) ->
+                server.execute(() -> {
+                    if (BuildQueue.cancelAll(player.getUuid()) == 0) {
+                        player.sendMessage(Text.of("§cNo builds to cancel!"), false);
+                    }
+                }));
+    }
+
+    private static void handleBuildRequest(ServerPlayerEntity player, BuildConfig config) {
+        String error = validate(config);
+        if (error != null) {
+            sendAck(player, false, 0, error);
+            return;
+        }
+        // Keeps one client from filling the queue and the plan workers for everyone else
+        int maxQueued = BuilderUISettings.get().getMaxQueuedBuildsPerPlayer();
+        if (BuildQueue.getJobs(player.getUuid()).size() >= maxQueued) {
+            sendAck(player, false, 0, "You already have " + maxQueued + " builds queued, wait for one to finish");
+            return;
+        }
+
+        BuildJob job = StructureBuilder.build(player, config);
+        if (job == null) {
+            sendAck(player, false, 0, "Could not start build");
+            return;
+        }
+        String name = config.getBuildType().getDisplayName();
+        sendAck(player, true, job.getId(), TickHealth.isOverloaded()
+                ? "Server is busy, building " + name + " at reduced speed..."
+                : "Building " + name + "...");
+    }
+
+    /**
+     * Returns a message describing why the configuration cannot be built, or null if it is valid.
+     */
+    private static String validate(BuildConfig config) {
+        if (config.getBuildType() == BuildType.CUSTOM) {
+            return "Custom structures cannot be built from the menu yet";
+        }
+        int maxOffset = BuilderUISettings.get().getMaxBuildOffset();
+        if (Math.abs(config.getOffsetX()) > maxOffset
+                || Math.abs(config.getOffsetY()) > maxOffset
+                || Math.abs(config.getOffsetZ()) > maxOffset) {
+            return "Build offset is too far away (max " + maxOffset + " blocks)";
+        }
+        if (TickHealth.isOverloaded()) {
+            // Only plans that are already compiled can be checked here; the queue checks the rest once generated
+            BlockPlan plan = BlockPlanCache.getIfCompiled(BlockPlanCache.Key.of(config));
+            if (plan != null && TickHealth.isTooLarge(plan.size())) {
+                return TickHealth.getTooLargeMessage(config.getBuildType().getDisplayName(), plan.size());
+            }
+        }
+        return null;
+    }
+
+    private static void sendAck(ServerPlayerEntity player, boolean accepted, long buildId, String message) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeBoolean(accepted);
+        buf.writeVarLong(buildId);
+        buf.writeString(message);
+        buf.writeFloat((float) BuildQueue.getBlocksPerSecond());
+        ServerPlayNetworking.send(player, BUILD_ACK, buf);
+    }
+}
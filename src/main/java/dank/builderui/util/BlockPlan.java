@@ -0,0 +1,223 @@
+package dank.builderui.util;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.BlockMirror;
+import net.minecraft.util.BlockRotation;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, compiled geometry of a structure relative to its origin.
+ *
+ * Positions are packed longs ({@link BlockPos#asLong(int, int, int)}) and states are indices
+ * into a small palette. Bounds and a per-palette-entry histogram are computed once when the
+ * plan is built. A plan only depends on its {@link BlockPlanCache.Key}, so the same instance
+ * is shared by every build of that configuration and translated to the build origin when applied.
+ */
+public class BlockPlan {
+    private final long[] positions;
+    private final int[] stateIds;
+    private final BlockState[] palette;
+    private final int[] histogram;
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int maxX;
+    private final int maxY;
+    private final int maxZ;
+
+    private BlockPlan(long[] positions, int[] stateIds, BlockState[] palette) {
+        this.positions = positions;
+        this.stateIds = stateIds;
+        this.palette = palette;
+        this.histogram = new int[palette.length];
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int i = 0; i < positions.length; i++) {
+            long pos = positions[i];
+            minX = Math.min(minX, BlockPos.unpackLongX(pos));
+            minY = Math.min(minY, BlockPos.unpackLongY(pos));
+            minZ = Math.min(minZ, BlockPos.unpackLongZ(pos));
+            maxX = Math.max(maxX, BlockPos.unpackLongX(pos));
+            maxY = Math.max(maxY, BlockPos.unpackLongY(pos));
+            maxZ = Math.max(maxZ, BlockPos.unpackLongZ(pos));
+            histogram[stateIds[i]]++;
+        }
+        boolean empty = positions.length == 0;
+        this.minX = empty ? 0 : minX;
+        this.minY = empty ? 0 : minY;
+        this.minZ = empty ? 0 : minZ;
+        this.maxX = empty ? 0 : maxX;
+        this.maxY = empty ? 0 : maxY;
+        this.maxZ = empty ? 0 : maxZ;
+    }
+
+    /**
+     * Returns the number of blocks in the plan.
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * Returns the packed relative position of the block at the given index.
+     */
+    public long getPosition(int index) {
+        return positions[index];
+    }
+
+    /**
+     * Returns the palette index of the block at the given index.
+     */
+    public int getStateId(int index) {
+        return stateIds[index];
+    }
+
+    public BlockState getState(int index) {
+        return palette[stateIds[index]];
+    }
+
+    public List<BlockState> getPalette() {
+        return Collections.unmodifiableList(Arrays.asList(palette));
+    }
+
+    /**
+     * Returns how many blocks of the plan use the given palette entry.
+     */
+    public int getCount(int stateId) {
+        return histogram[stateId];
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    /**
+     * Returns this plan mirrored and then rotated around the origin, the same order vanilla
+     * structure templates use. Positions are transformed in one pass over the packed array
+     * and states through {@link BlockStateTransforms}, so only the palette is looked up per entry.
+     */
+    public BlockPlan transform(BlockMirror mirror, BlockRotation rotation) {
+        if (mirror == BlockMirror.NONE && rotation == BlockRotation.NONE) {
+            return this;
+        }
+
+        boolean flipX = mirror == BlockMirror.FRONT_BACK;
+        boolean flipZ = mirror == BlockMirror.LEFT_RIGHT;
+        long[] transformed = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            long pos = positions[i];
+            int x = BlockPos.unpackLongX(pos);
+            int y = BlockPos.unpackLongY(pos);
+            int z = BlockPos.unpackLongZ(pos);
+            if (flipX) x = -x;
+            if (flipZ) z = -z;
+            transformed[i] = switch (rotation) {
+                case NONE -> BlockPos.asLong(x, y, z);
+                case CLOCKWISE_90 -> BlockPos.asLong(-z, y, x);
+                case CLOCKWISE_180 -> BlockPos.asLong(-x, y, -z);
+                case COUNTERCLOCKWISE_90 -> BlockPos.asLong(z, y, -x);
+            };
+        }
+
+        BlockState[] transformedPalette = new BlockState[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            transformedPalette[i] = BlockStateTransforms.transform(palette[i], mirror, rotation);
+        }
+        // Mirroring and rotating are bijective per block, so palette indices stay valid
+        return new BlockPlan(transformed, stateIds, transformedPalette);
+    }
+
+    /**
+     * Copies the plan's positions, translated by the given offset, into {@code out} at {@code outIndex}.
+     */
+    public void translateInto(long[] out, int outIndex, int offsetX, int offsetY, int offsetZ) {
+        for (int i = 0; i < positions.length; i++) {
+            out[outIndex + i] = BlockPos.add(positions[i], offsetX, offsetY, offsetZ);
+        }
+    }
+
+    /**
+     * Copies the plan's states into {@code out} at {@code outIndex}.
+     */
+    public void statesInto(BlockState[] out, int outIndex) {
+        for (int i = 0; i < stateIds.length; i++) {
+            out[outIndex + i] = palette[stateIds[i]];
+        }
+    }
+
+    /**
+     * Collects block placements for a plan, relative to the structure origin.
+     * Setting a position again replaces its state but keeps its original place in the order.
+     */
+    public static class Builder {
+        private final Long2IntOpenHashMap indices = new Long2IntOpenHashMap();
+        private final Reference2IntOpenHashMap<BlockState> paletteIds = new Reference2IntOpenHashMap<>();
+        private final List<BlockState> palette = new ArrayList<>();
+        private long[] positions = new long[256];
+        private int[] stateIds = new int[256];
+        private int size;
+
+        public Builder() {
+            indices.defaultReturnValue(-1);
+            paletteIds.defaultReturnValue(-1);
+        }
+
+        public void set(int x, int y, int z, BlockState state) {
+            int stateId = paletteIds.getInt(state);
+            if (stateId < 0) {
+                stateId = palette.size();
+                palette.add(state);
+                paletteIds.put(state, stateId);
+            }
+
+            long pos = BlockPos.asLong(x, y, z);
+            int index = indices.get(pos);
+            if (index >= 0) {
+                stateIds[index] = stateId;
+                return;
+            }
+
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                stateIds = Arrays.copyOf(stateIds, size * 2);
+            }
+            indices.put(pos, size);
+            positions[size] = pos;
+            stateIds[size] = stateId;
+            size++;
+        }
+
+        public BlockPlan build() {
+            return new BlockPlan(Arrays.copyOf(positions, size), Arrays.copyOf(stateIds, size),
+                    palette.toArray(new BlockState[0]));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package dank.builderui.util;
+
+import net.minecraft.util.BlockMirror;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of compiled {@link BlockPlan}s and the {@link BuildInfo} summaries derived from them.
+ * Built-in structures only depend on their type, size, material, style, rotation and mirror,
+ * so each combination is generated once and reused by every later build.
+ */
+public class BlockPlanCache {
+    private static final Map<Key, CompletableFuture<BlockPlan>> plans = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<BlockPlan>> eldest) {
+            return size() > BuilderUISettings.get().getPlanCacheSize();
+        }
+    };
+    private static final Map<Key, BuildInfo> infos = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, BuildInfo> eldest) {
+            return size() > BuilderUISettings.get().getPlanCacheSize();
+        }
+    };
+
+    /**
+     * Everything a built-in structure's geometry depends on.
+     */
+    public record Key(BuildType buildType, BuildSize size, MaterialType material, BuildStyle style, int rotation,
+                      BlockMirror mirror) {
+        public static Key of(BuildConfig config) {
+            return new Key(config.getBuildType(), config.getSize(), config.getMaterial(), config.getStyle(),
+                    Math.floorMod(config.getRotation(), 360), config.getMirror());
+        }
+
+        /**
+         * Returns the key of the same structure without rotation or mirroring.
+         */
+        public Key untransformed() {
+            return new Key(buildType, size, material, style, 0, BlockMirror.NONE);
+        }
+
+        public boolean isTransformed() {
+            return rotation != 0 || mirror != BlockMirror.NONE;
+        }
+
+        /**
+         * Returns a configuration with these settings and no offset.
+         */
+        public BuildConfig toConfig() {
+            BuildConfig config = new BuildConfig(buildType);
+            config.setSize(size);
+            config.setMaterial(material);
+            config.setStyle(style);
+            config.setRotation(rotation);
+            config.setMirror(mirror);
+            config.setOffsetX(0);
+            config.setOffsetY(0);
+            config.setOffsetZ(0);
+            return config;
+        }
+    }
+
+    /**
+     * Returns the cached plan for a key, compiling it if needed.
+     * Plans are compiled outside the lock, so workers generating different plans do not wait on
+     * each other; a thread asking for a plan that is already being compiled waits for that result.
+     */
+    public static BlockPlan get(Key key, Function<Key, BlockPlan> compiler) {
+        CompletableFuture<BlockPlan> plan;
+        boolean compile = false;
+        synchronized (BlockPlanCache.class) {
+            plan = plans.get(key);
+            if (plan == null) {
+                plan = new CompletableFuture<>();
+                plans.put(key, plan);
+                compile = true;
+            }
+        }
+        if (compile) {
+            try {
+                plan.complete(compiler.apply(key));
+            } catch (RuntimeException e) {
+                synchronized (BlockPlanCache.class) {
+                    plans.remove(key, plan);
+                }
+                plan.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return plan.join();
+    }
+
+    /**
+     * Returns the plan for a key if it has already been compiled, without compiling it.
+     */
+    public static BlockPlan getIfCompiled(Key key) {
+        CompletableFuture<BlockPlan> plan;
+        synchronized (BlockPlanCache.class) {
+            plan = plans.get(key);
+        }
+        return plan != null && plan.isDone() && !plan.isCompletedExceptionally() ? plan.join() : null;
+    }
+
+    /**
+     * Returns the cached build info for a key, computing it if needed.
+     */
+    public static BuildInfo getInfo(Key key, Function<Key, BuildInfo> summarizer) {
+        synchronized (BlockPlanCache.class) {
+            BuildInfo info = infos.get(key);
+            if (info != null) {
+                return info;
+            }
+        }
+        // Summarizing may compile the plan, which must not happen under the lock
+        BuildInfo info = summarizer.apply(key);
+        synchronized (BlockPlanCache.class) {
+            infos.put(key, info);
+        }
+        return info;
+    }
+
+    /**
+     * Drops all cached plans and build infos.
+     */
+    public static synchronized void clear() {
+        plans.clear();
+        infos.clear();
+    }
+
+    public static synchronized int size() {
+        return plans.size();
+    }
+}
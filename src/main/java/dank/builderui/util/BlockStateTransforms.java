@@ -0,0 +1,40 @@
+package dank.builderui.util;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.util.BlockMirror;
+import net.minecraft.util.BlockRotation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed mirror and rotation results for block states.
+ * The first lookup of a state computes all of its variants; later lookups are a single map read.
+ */
+public class BlockStateTransforms {
+    private static final BlockMirror[] MIRRORS = BlockMirror.values();
+    private static final BlockRotation[] ROTATIONS = BlockRotation.values();
+    private static final Map<BlockState, BlockState[]> TABLE = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the state mirrored and then rotated, matching how vanilla structure templates are placed.
+     */
+    public static BlockState transform(BlockState state, BlockMirror mirror, BlockRotation rotation) {
+        if (mirror == BlockMirror.NONE && rotation == BlockRotation.NONE) {
+            return state;
+        }
+        return TABLE.computeIfAbsent(state, BlockStateTransforms::computeVariants)
+                [mirror.ordinal() * ROTATIONS.length + rotation.ordinal()];
+    }
+
+    private static BlockState[] computeVariants(BlockState state) {
+        BlockState[] variants = new BlockState[MIRRORS.length * ROTATIONS.length];
+        for (BlockMirror mirror : MIRRORS) {
+            BlockState mirrored = state.mirror(mirror);
+            for (BlockRotation rotation : ROTATIONS) {
+                variants[mirror.ordinal() * ROTATIONS.length + rotation.ordinal()] = mirrored.rotate(rotation);
+            }
+        }
+        return variants;
+    }
+}
@@ -0,0 +1,105 @@
+package dank.builderui.util;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.FallingBlock;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+/**
+ * Runs the block updates that were suppressed while a build was placed.
+ *
+ * Blocks inside the build volume only had their final state written, so instead of
+ * replaying every neighbor update this does one deduplicated pass: blocks whose shape
+ * depends on their neighbors (fences, panes, leaves, fluids) are settled once, and only
+ * the blocks on the boundary of the volume notify the world outside and get their
+ * fluid and gravity ticks scheduled.
+ */
+public class BoundaryUpdater {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int MAX_UPDATE_DEPTH = 512;
+    private static final int FALLING_BLOCK_DELAY = 2;
+
+    /**
+     * Settles the given changed positions and the blocks touching them from outside.
+     */
+    public static void run(ServerWorld world, LongSet changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        BlockPos.Mutable neighbor = new BlockPos.Mutable();
+        LongSet boundary = new LongOpenHashSet();
+
+        // Settle neighbor-dependent shapes inside the build and find its boundary
+        for (LongIterator it = changed.iterator(); it.hasNext(); ) {
+            long packed = it.nextLong();
+            pos.set(packed);
+            boolean onBoundary = false;
+            for (Direction direction : DIRECTIONS) {
+                neighbor.set(pos, direction);
+                if (!changed.contains(neighbor.asLong())) {
+                    onBoundary = true;
+                    break;
+                }
+            }
+            if (onBoundary) {
+                boundary.add(packed);
+            }
+
+            BlockState state = world.getBlockState(pos);
+            if (onBoundary || !state.isOpaqueFullCube(world, pos)) {
+                BlockState settled = Block.postProcessState(state, world, pos);
+                if (settled != state) {
+                    world.setBlockState(pos, settled, Block.NOTIFY_LISTENERS | Block.FORCE_STATE);
+                }
+            }
+        }
+
+        // Update each outside block once, against every build block it touches
+        LongSet notified = new LongOpenHashSet();
+        for (LongIterator it = boundary.iterator(); it.hasNext(); ) {
+            long packed = it.nextLong();
+            pos.set(packed);
+            BlockState state = world.getBlockState(pos);
+
+            for (Direction direction : DIRECTIONS) {
+                neighbor.set(pos, direction);
+                long neighborPacked = neighbor.asLong();
+                if (!changed.contains(neighborPacked) && notified.add(neighborPacked)) {
+                    updateOutsideBlock(world, neighbor.toImmutable(), changed, state.getBlock(), pos);
+                }
+            }
+            scheduleTicks(world, pos, state);
+        }
+    }
+
+    private static void updateOutsideBlock(ServerWorld world, BlockPos outside, LongSet changed,
+                                           Block sourceBlock, BlockPos sourcePos) {
+        BlockPos.Mutable source = new BlockPos.Mutable();
+        for (Direction direction : DIRECTIONS) {
+            source.set(outside, direction);
+            if (changed.contains(source.asLong())) {
+                world.replaceWithStateForNeighborUpdate(direction, world.getBlockState(source),
+                        outside, source, Block.NOTIFY_ALL, MAX_UPDATE_DEPTH);
+            }
+        }
+        world.updateNeighbor(outside, sourceBlock, sourcePos.toImmutable());
+    }
+
+    private static void scheduleTicks(ServerWorld world, BlockPos pos, BlockState state) {
+        FluidState fluid = state.getFluidState();
+        if (!fluid.isEmpty()) {
+            world.scheduleFluidTick(pos.toImmutable(), fluid.getFluid(), fluid.getFluid().getTickRate(world));
+        }
+        if (state.getBlock() instanceof FallingBlock) {
+            world.scheduleBlockTick(pos.toImmutable(), state.getBlock(), FALLING_BLOCK_DELAY);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package dank.builderui.util;
 
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.util.BlockMirror;
+import net.minecraft.util.BlockRotation;
+
 /**
  * Configuration class for building structures.
  * Contains settings for material, size, style, orientation, and placement.
@@ -10,6 +14,7 @@ public class BuildConfig {
     private BuildSize size;
     private BuildStyle style;
     private int rotation; // 0, 90, 180, 270 degrees
+    private BlockMirror mirror;
     private int offsetX;
     private int offsetY;
     private int offsetZ;
@@ -20,6 +25,7 @@ public class BuildConfig {
         this.size = BuildSize.MEDIUM;
         this.style = BuildStyle.STANDARD;
         this.rotation = 0;
+        this.mirror = BlockMirror.NONE;
         this.offsetX = 2;
         this.offsetY = 0;
         this.offsetZ = 2;
@@ -63,7 +69,27 @@ public class BuildConfig {
     }
     
     public void setRotation(int rotation) {
-        this.rotation = rotation % 360;
+        this.rotation = Math.floorMod(rotation, 360);
+    }
+    
+    /**
+     * Returns the rotation as a vanilla rotation, snapped to quarter turns.
+     */
+    public BlockRotation getBlockRotation() {
+        return switch (rotation / 90) {
+            case 1 -> BlockRotation.CLOCKWISE_90;
+            case 2 -> BlockRotation.CLOCKWISE_180;
+            case 3 -> BlockRotation.COUNTERCLOCKWISE_90;
+            default -> BlockRotation.NONE;
+        };
+    }
+    
+    public BlockMirror getMirror() {
+        return mirror;
+    }
+    
+    public void setMirror(BlockMirror mirror) {
+        this.mirror = mirror;
     }
     
     public int getOffsetX() {
@@ -90,6 +116,60 @@ public class BuildConfig {
         this.offsetZ = offsetZ;
     }
     
+    /**
+     * Writes this configuration in its compact network form:
+     * enum ordinals and quarter turns as varints, offsets as zigzag varints.
+     * A typical configuration fits in 9 bytes.
+     */
+    public void write(PacketByteBuf buf) {
+        buf.writeVarInt(buildType.ordinal());
+        buf.writeVarInt(material.ordinal());
+        buf.writeVarInt(size.ordinal());
+        buf.writeVarInt(style.ordinal());
+        buf.writeVarInt(Math.floorMod(rotation, 360) / 90);
+        buf.writeVarInt(mirror.ordinal());
+        buf.writeVarInt(zigzag(offsetX));
+        buf.writeVarInt(zigzag(offsetY));
+        buf.writeVarInt(zigzag(offsetZ));
+    }
+    
+    /**
+     * Reads a configuration written by {@link #write(PacketByteBuf)}.
+     * Throws IllegalArgumentException if any value is out of range.
+     */
+    public static BuildConfig read(PacketByteBuf buf) {
+        BuildConfig config = new BuildConfig(readEnum(buf, BuildType.values(), "build type"));
+        config.material = readEnum(buf, MaterialType.values(), "material");
+        config.size = readEnum(buf, BuildSize.values(), "size");
+        config.style = readEnum(buf, BuildStyle.values(), "style");
+        int quarterTurns = buf.readVarInt();
+        if (quarterTurns < 0 || quarterTurns > 3) {
+            throw new IllegalArgumentException("Invalid rotation: " + quarterTurns);
+        }
+        config.rotation = quarterTurns * 90;
+        config.mirror = readEnum(buf, BlockMirror.values(), "mirror");
+        config.offsetX = unzigzag(buf.readVarInt());
+        config.offsetY = unzigzag(buf.readVarInt());
+        config.offsetZ = unzigzag(buf.readVarInt());
+        return config;
+    }
+    
+    private static <T extends Enum<T>> T readEnum(PacketByteBuf buf, T[] values, String name) {
+        int ordinal = buf.readVarInt();
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + ordinal);
+        }
+        return values[ordinal];
+    }
+    
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+    
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
     /**
      * Creates a copy of this configuration.
      */
@@ -99,6 +179,7 @@ public class BuildConfig {
         copy.size = this.size;
         copy.style = this.style;
         copy.rotation = this.rotation;
+        copy.mirror = this.mirror;
         copy.offsetX = this.offsetX;
         copy.offsetY = this.offsetY;
         copy.offsetZ = this.offsetZ;
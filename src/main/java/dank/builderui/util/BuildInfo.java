@@ -1,53 +1,125 @@
 package dank.builderui.util;
 
+import net.minecraft.block.BlockState;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Information about a specific build, including blocks needed and estimated time.
+ *
+ * Block counts come from the compiled {@link BlockPlan}, so they are exactly what the build
+ * places. The number of blocks that differ at a target location and the time estimate are
+ * filled in by {@link #withTarget(int, double)}.
  */
 public class BuildInfo {
     private final BuildType buildType;
     private final String description;
-    private final Map<String, Integer> blocksNeeded;
+    private final Map<BlockState, Integer> stateCounts;
+    private final int planSize;
+    private final int changedBlocks;
     private final int estimatedSeconds;
-    
-    public BuildInfo(BuildType buildType, String description, int estimatedSeconds) {
+
+    private BuildInfo(BuildType buildType, String description, Map<BlockState, Integer> stateCounts,
+                      int planSize, int changedBlocks, int estimatedSeconds) {
         this.buildType = buildType;
         this.description = description;
-        this.blocksNeeded = new HashMap<>();
+        this.stateCounts = stateCounts;
+        this.planSize = planSize;
+        this.changedBlocks = changedBlocks;
         this.estimatedSeconds = estimatedSeconds;
     }
-    
-    public void addBlockRequirement(String blockName, int count) {
-        blocksNeeded.put(blockName, count);
+
+    /**
+     * Summarizes a compiled plan. Air in the plan clears space and is not counted as a material.
+     */
+    public static BuildInfo of(BuildType buildType, String description, BlockPlan plan) {
+        Map<BlockState, Integer> counts = new HashMap<>();
+        List<BlockState> palette = plan.getPalette();
+        for (int id = 0; id < palette.size(); id++) {
+            BlockState state = palette.get(id);
+            int count = plan.getCount(id);
+            // Transformed plans can map several palette entries to the same state
+            if (count > 0 && !state.isAir()) {
+                counts.merge(state, count, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<BlockState, Integer>> sorted = new ArrayList<>(counts.entrySet());
+        sorted.sort(Map.Entry.<BlockState, Integer>comparingByValue().reversed());
+        Map<BlockState, Integer> stateCounts = new LinkedHashMap<>();
+        for (Map.Entry<BlockState, Integer> entry : sorted) {
+            stateCounts.put(entry.getKey(), entry.getValue());
+        }
+        return new BuildInfo(buildType, description, Collections.unmodifiableMap(stateCounts), plan.size(), -1, -1);
+    }
+
+    /**
+     * Returns a copy with the number of blocks that differ at the target location and the time
+     * the build takes at the given placement throughput.
+     */
+    public BuildInfo withTarget(int changedBlocks, double blocksPerSecond) {
+        // Every unit of the plan is checked while placing, including the ones already in place
+        int seconds = blocksPerSecond > 0 ? (int) Math.ceil(planSize / blocksPerSecond) : -1;
+        return new BuildInfo(buildType, description, stateCounts, planSize, changedBlocks, seconds);
     }
-    
+
     public BuildType getBuildType() {
         return buildType;
     }
-    
+
     public String getDescription() {
         return description;
     }
-    
+
+    /**
+     * Returns the exact number of blocks of each state the build places, most used first.
+     */
+    public Map<BlockState, Integer> getStateCounts() {
+        return stateCounts;
+    }
+
+    /**
+     * Returns the number of blocks needed per block type, with all states of a block combined.
+     */
     public Map<String, Integer> getBlocksNeeded() {
-        return new HashMap<>(blocksNeeded);
+        Map<String, Integer> blocksNeeded = new LinkedHashMap<>();
+        for (Map.Entry<BlockState, Integer> entry : stateCounts.entrySet()) {
+            blocksNeeded.merge(entry.getKey().getBlock().getName().getString(), entry.getValue(), Integer::sum);
+        }
+        return blocksNeeded;
     }
-    
+
+    /**
+     * Returns the number of blocks at the target location that the build would change,
+     * or -1 if no location was checked.
+     */
+    public int getChangedBlocks() {
+        return changedBlocks;
+    }
+
+    /**
+     * Returns the estimated build time in seconds, or -1 if it is unknown.
+     */
     public int getEstimatedSeconds() {
         return estimatedSeconds;
     }
-    
+
     public int getTotalBlocks() {
-        return blocksNeeded.values().stream().mapToInt(Integer::intValue).sum();
+        return stateCounts.values().stream().mapToInt(Integer::intValue).sum();
     }
-    
+
     /**
      * Returns a formatted string with the estimated time.
      */
     public String getFormattedTime() {
-        if (estimatedSeconds < 60) {
+        if (estimatedSeconds < 0) {
+            return "unknown";
+        } else if (estimatedSeconds < 60) {
             return estimatedSeconds + " seconds";
         } else {
             int minutes = estimatedSeconds / 60;
@@ -0,0 +1,515 @@
+package dank.builderui.util;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * A single queued build, undo or redo, cut into work units that {@link BuildQueue} applies
+ * across server ticks.
+ * Each work unit places one block state; units that would not change the world are
+ * skipped, and only positions that actually change are recorded for undo.
+ * Units are applied in chunk section order through a {@link SectionPlacer}.
+ *
+ * In deferred update mode (the default) neighbor updates and scheduled ticks are
+ * suppressed while the job runs and {@link BoundaryUpdater} settles the result
+ * once at the end; otherwise every block goes through the regular world update path.
+ *
+ * Undo and redo jobs take their snapshot from {@link UndoManager} only when they start,
+ * so an undo queued behind a running build undoes that build once it has finished. If the
+ * player's history has to be listed or the snapshot read from disk first, the job is not
+ * ready until it has been.
+ *
+ * Builds filled with {@link #placeAsync} generate, translate and sort their work units on
+ * a worker pool; the queue skips them until {@link #isReady()}, and the server thread then
+ * only adopts the finished arrays.
+ */
+public class BuildJob {
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        CANCELLED
+    }
+
+    public enum Kind {
+        BUILD("Building ", ""),
+        UNDO("Undoing ", "Undo of "),
+        REDO("Redoing ", "Redo of ");
+
+        private final String progressPrefix;
+        private final String resultPrefix;
+
+        Kind(String progressPrefix, String resultPrefix) {
+            this.progressPrefix = progressPrefix;
+            this.resultPrefix = resultPrefix;
+        }
+
+        public String getProgressPrefix() {
+            return progressPrefix;
+        }
+
+        public String getResultPrefix() {
+            return resultPrefix;
+        }
+    }
+
+    private static long nextId = 1;
+
+    private final long id;
+    private final Kind kind;
+    private final UUID playerId;
+    private final UndoSnapshot.Builder originalStates = new UndoSnapshot.Builder();
+    private ServerWorld world;
+    private BuildType buildType;
+    private SectionPlacer placer;
+    private UndoManager.BuildAction restoreAction;
+    private final boolean deferUpdates;
+    private final LongSet changedPositions = new LongOpenHashSet();
+    private long[] positions = new long[256];
+    private BlockState[] states = new BlockState[256];
+    private int size;
+    private int cursor;
+    private int placedBlocks;
+    private int skippedBlocks;
+    private Status status = Status.QUEUED;
+    private CompletableFuture<WorkUnits> preparing;
+    private CompletableFuture<Void> loadingHistory;
+    private CompletableFuture<UndoManager.BuildAction> restoring;
+    private long applyNanos;
+
+    /**
+     * Work units in the order they are applied.
+     */
+    private record WorkUnits(long[] positions, BlockState[] states) {
+    }
+
+    public BuildJob(ServerWorld world, UUID playerId, BuildType buildType) {
+        this(Kind.BUILD, world, playerId, buildType);
+    }
+
+    private BuildJob(Kind kind, ServerWorld world, UUID playerId, BuildType buildType) {
+        this.id = nextId++;
+        this.kind = kind;
+        this.world = world;
+        this.playerId = playerId;
+        this.buildType = buildType;
+        this.placer = new SectionPlacer(world);
+        this.deferUpdates = BuilderUISettings.get().isDeferBlockUpdates();
+    }
+
+    /**
+     * Creates an undo or redo job for a player. The world is only used if the
+     * restored action's dimension is no longer loaded.
+     */
+    public static BuildJob restore(Kind kind, ServerWorld world, UUID playerId) {
+        if (kind == Kind.BUILD) {
+            throw new IllegalArgumentException("Restore jobs must be UNDO or REDO");
+        }
+        return new BuildJob(kind, world, playerId, null);
+    }
+
+    /**
+     * Adds a work unit that places the given state at the position.
+     */
+    public void place(BlockPos pos, BlockState state) {
+        add(pos.asLong(), state);
+    }
+
+    /**
+     * Adds a work unit for every block of a compiled plan, translated to the given origin.
+     */
+    public void place(BlockPlan plan, BlockPos origin) {
+        checkQueued();
+        int needed = size + plan.size();
+        if (needed > positions.length) {
+            positions = Arrays.copyOf(positions, needed);
+            states = Arrays.copyOf(states, needed);
+        }
+        plan.translateInto(positions, size, origin.getX(), origin.getY(), origin.getZ());
+        plan.statesInto(states, size);
+        size = needed;
+    }
+
+    /**
+     * Generates the work units for a plan on the given executor instead of the calling thread.
+     * The plan supplier must not touch the world. This must be the only work added to the job.
+     */
+    public void placeAsync(Supplier<BlockPlan> planSupplier, BlockPos origin, Executor executor) {
+        checkQueued();
+        if (size > 0 || preparing != null) {
+            throw new IllegalStateException("An asynchronous build cannot hold other work");
+        }
+        try {
+            preparing = CompletableFuture.supplyAsync(() -> {
+                BuilderEvents.PlanPrepare event = new BuilderEvents.PlanPrepare();
+                event.begin();
+                long start = System.nanoTime();
+                BlockPlan plan = planSupplier.get();
+                long[] planPositions = new long[plan.size()];
+                BlockState[] planStates = new BlockState[plan.size()];
+                plan.translateInto(planPositions, 0, origin.getX(), origin.getY(), origin.getZ());
+                plan.statesInto(planStates, 0);
+                WorkUnits units = sortBySection(planPositions, planStates, plan.size());
+                BuildMetrics.recordGeneration(buildType, playerId, System.nanoTime() - start);
+                if (event.shouldCommit()) {
+                    event.buildId = id;
+                    event.buildType = buildType.name();
+                    event.player = playerId.toString();
+                    event.blockCount = plan.size();
+                    event.commit();
+                }
+                return units;
+            }, executor);
+        } catch (RuntimeException e) {
+            // The pool's queue is full
+            preparing = CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Returns false while the job's work units are still being generated, or its undo
+     * history is still being listed or read.
+     */
+    public boolean isReady() {
+        return (preparing == null || preparing.isDone())
+                && (loadingHistory == null || loadingHistory.isDone())
+                && (restoring == null || restoring.isDone());
+    }
+
+    /**
+     * Returns why generating the job's work units failed, or null if they did not.
+     */
+    public Throwable getFailure() {
+        if (preparing == null || !preparing.isCompletedExceptionally()) {
+            return null;
+        }
+        return preparing.handle((units, error) -> error).join();
+    }
+
+    private void checkQueued() {
+        if (status != Status.QUEUED) {
+            throw new IllegalStateException("Cannot add work to a build that has already started");
+        }
+    }
+
+    private void add(long pos, BlockState state) {
+        checkQueued();
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            states = Arrays.copyOf(states, size * 2);
+        }
+        positions[size] = pos;
+        states[size] = state;
+        size++;
+    }
+
+    /**
+     * Applies work units until the job is finished or the deadline passes.
+     * At least one unit is applied per call so every build makes progress.
+     * Returns true once every unit has been applied. An undo or redo whose history is still
+     * being read from disk applies nothing and stays queued until {@link #isReady()}.
+     */
+    boolean run(long deadlineNanos) {
+        BuilderEvents.BuildApply event = new BuilderEvents.BuildApply();
+        event.begin();
+        long start = System.nanoTime();
+        int startCursor = cursor;
+        if (status == Status.QUEUED) {
+            WorkUnits units;
+            if (preparing != null) {
+                // Already sorted on the worker
+                units = preparing.join();
+            } else {
+                if (kind != Kind.BUILD && !takeRestoreAction()) {
+                    return false;
+                }
+                units = sortBySection(positions, states, size);
+            }
+            positions = units.positions();
+            states = units.states();
+            size = positions.length;
+            status = Status.RUNNING;
+        }
+        while (cursor < size) {
+            apply(cursor++);
+            // Reading the clock is not free, so only check it every few units
+            if ((cursor & 31) == 0 && System.nanoTime() >= deadlineNanos) {
+                break;
+            }
+        }
+        placer.flush();
+        applyNanos += System.nanoTime() - start;
+
+        boolean finished = cursor >= size;
+        if (event.shouldCommit()) {
+            event.buildId = id;
+            event.kind = kind.name();
+            event.buildType = buildType != null ? buildType.name() : null;
+            event.player = playerId.toString();
+            event.blockCount = cursor - startCursor;
+            event.finished = finished;
+            event.commit();
+        }
+        return finished;
+    }
+
+    private void apply(int index) {
+        long packed = positions[index];
+        BlockState state = states[index];
+        BlockState previous;
+        if (deferUpdates) {
+            previous = placer.place(packed, state);
+        } else {
+            BlockPos pos = BlockPos.fromLong(packed);
+            previous = world.getBlockState(pos);
+            if (previous != state) {
+                world.setBlockState(pos, state);
+            }
+        }
+
+        if (previous == state) {
+            skippedBlocks++;
+            return;
+        }
+        placedBlocks++;
+        if (deferUpdates) {
+            // Only the deferred update pass reads these
+            changedPositions.add(packed);
+        }
+        originalStates.add(packed, previous);
+    }
+
+    /**
+     * Fills an undo or redo job from the player's history. Returns false while the history is
+     * still being listed or the action read from disk. If there is nothing to restore the job stays empty and
+     * finishes on the spot.
+     */
+    private boolean takeRestoreAction() {
+        while (true) {
+            if (restoring == null) {
+                loadingHistory = UndoManager.loadHistory(playerId);
+                if (!loadingHistory.isDone()) {
+                    return false;
+                }
+                restoring = UndoManager.takeForRestore(playerId, kind);
+            }
+            if (!restoring.isDone()) {
+                return false;
+            }
+            restoreAction = restoring.join();
+            restoring = null;
+            // A null action with history left means an unreadable file; try the next older one
+            if (restoreAction != null || !UndoManager.hasHistory(playerId, kind)) {
+                break;
+            }
+        }
+        if (restoreAction == null) {
+            return true;
+        }
+
+        ServerWorld actionWorld = world.getServer().getWorld(restoreAction.getDimension());
+        if (actionWorld != null && actionWorld != world) {
+            world = actionWorld;
+            placer = new SectionPlacer(world);
+        }
+        buildType = restoreAction.getBuildType();
+        // Blocks a cancelled attempt already replaced come first, so they win over this run's
+        UndoSnapshot replaced = restoreAction.getReplaced();
+        if (replaced != null) {
+            replaced.forEach((x, y, z, state) -> originalStates.add(BlockPos.asLong(x, y, z), state));
+        }
+        restoreAction.getSnapshot().forEach((x, y, z, state) -> add(BlockPos.asLong(x, y, z), state));
+        return true;
+    }
+
+    /**
+     * Runs the block updates that were held back while placing.
+     */
+    private void settle() {
+        BuilderEvents.BuildSettle event = new BuilderEvents.BuildSettle();
+        event.begin();
+        int changed = changedPositions.size();
+        if (deferUpdates) {
+            BoundaryUpdater.run(world, changedPositions);
+        }
+        changedPositions.clear();
+        if (event.shouldCommit()) {
+            event.buildId = id;
+            event.changedBlocks = changed;
+            event.commit();
+        }
+    }
+
+    /**
+     * Reorders work units so each chunk section is written in one run.
+     * The sort is stable, so units for the same position keep their original order.
+     */
+    private static WorkUnits sortBySection(long[] positions, BlockState[] states, int size) {
+        long[] sections = new long[size];
+        for (int i = 0; i < size; i++) {
+            sections[i] = SectionPlacer.sectionKey(positions[i]);
+        }
+        long[] distinct = Arrays.stream(sections).distinct().sorted().toArray();
+
+        // Pack (section rank, original index) into one long so a primitive sort is stable
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) Arrays.binarySearch(distinct, sections[i]) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        long[] sortedPositions = new long[size];
+        BlockState[] sortedStates = new BlockState[size];
+        for (int i = 0; i < size; i++) {
+            int from = (int) order[i];
+            sortedPositions[i] = positions[from];
+            sortedStates[i] = states[from];
+        }
+        return new WorkUnits(sortedPositions, sortedStates);
+    }
+
+    void complete() {
+        status = Status.COMPLETED;
+        long start = System.nanoTime();
+        settle();
+        applyNanos += System.nanoTime() - start;
+        BuildMetrics.recordJob(this, applyNanos);
+        if (kind == Kind.BUILD) {
+            UndoManager.recordAction(playerId, world.getRegistryKey(), buildType, originalStates.build());
+        } else if (restoreAction != null) {
+            UndoManager.finishRestore(playerId, kind, restoreAction, originalStates.build());
+        }
+    }
+
+    /**
+     * Cancels this job. Blocks of a build that were already placed stay in the world
+     * and are recorded for undo like a finished build. A cancelled undo or redo goes
+     * back onto its stack with the blocks it already replaced, so running it again finishes
+     * the restore and still records a complete inverse.
+     */
+    void cancel() {
+        Status previous = status;
+        status = Status.CANCELLED;
+        settle();
+        BuildMetrics.recordJob(this, applyNanos);
+        if (kind == Kind.BUILD) {
+            if (previous == Status.RUNNING && !originalStates.isEmpty()) {
+                UndoManager.recordAction(playerId, world.getRegistryKey(), buildType, originalStates.build());
+            }
+        } else if (restoreAction != null) {
+            UndoManager.cancelRestore(playerId, kind, restoreAction, originalStates.build());
+        } else if (restoring != null) {
+            // Put the action back once it has been read, on the server thread
+            restoring.thenAcceptAsync(action -> {
+                if (action != null) {
+                    UndoManager.cancelRestore(playerId, kind, action, null);
+                }
+            }, world.getServer());
+        }
+    }
+
+    /**
+     * Returns the online player who requested this build, or null if they left.
+     */
+    ServerPlayerEntity getPlayer() {
+        return world.getServer().getPlayerManager().getPlayer(playerId);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public ServerWorld getWorld() {
+        return world;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the structure type, or null for an undo or redo that has not started yet.
+     */
+    public BuildType getBuildType() {
+        return buildType;
+    }
+
+    /**
+     * Returns a short name for messages, e.g. "Castle" or "Undo of Castle".
+     */
+    public String getDisplayName() {
+        return kind.getResultPrefix() + (buildType != null ? buildType.getDisplayName() : "build");
+    }
+
+    /**
+     * Returns true for an undo or redo job that found nothing to restore.
+     */
+    public boolean isEmptyRestore() {
+        return kind != Kind.BUILD && status != Status.QUEUED && restoreAction == null;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.CANCELLED;
+    }
+
+    public int getTotalUnits() {
+        return size;
+    }
+
+    /**
+     * Returns the number of work units the job will apply once it runs, or -1 while they are
+     * still being generated or if generating them failed. Undo and redo jobs report 0 until they start.
+     */
+    public int getPlannedUnits() {
+        if (preparing == null || status != Status.QUEUED) {
+            return size;
+        }
+        if (!preparing.isDone() || preparing.isCompletedExceptionally()) {
+            return -1;
+        }
+        return preparing.join().positions().length;
+    }
+
+    public int getCompletedUnits() {
+        return cursor;
+    }
+
+    /**
+     * Returns the number of blocks this job actually changed so far.
+     */
+    public int getPlacedBlocks() {
+        return placedBlocks;
+    }
+
+    /**
+     * Returns the number of units skipped because the world already had the desired state.
+     */
+    public int getSkippedBlocks() {
+        return skippedBlocks;
+    }
+
+    /**
+     * Returns build progress between 0 and 1.
+     */
+    public float getProgress() {
+        return size == 0 ? 1.0f : (float) cursor / size;
+    }
+}
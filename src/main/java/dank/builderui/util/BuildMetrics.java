@@ -0,0 +1,419 @@
+package dank.builderui.util;
+
+import dank.builderui.BuilderUIMod;
+import net.minecraft.server.MinecraftServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Counters and latency histograms for the build pipeline, since server start or the last reset.
+ *
+ * Everything is recorded with {@link LongAdder}s, so the worker and I/O threads can record
+ * without contention. Build counters are kept in total, per {@link BuildType} and per player;
+ * histograms use power-of-two buckets, which is coarse but constant in size and cost.
+ *
+ * {@code /builderui stats} shows the numbers in game. Optionally they are logged periodically
+ * and written to a file in the Prometheus text format, for scrapers such as node_exporter's
+ * textfile collector (see {@link BuilderUISettings#getMetricsLogIntervalSeconds()} and
+ * {@link BuilderUISettings#getMetricsFile()}).
+ */
+public class BuildMetrics {
+    /**
+     * Kinds of template file operations that are timed.
+     */
+    public enum IoOperation {
+        SAVE,
+        LOAD,
+        DELETE,
+        IMPORT
+    }
+
+    /**
+     * Histogram with one bucket per power of two.
+     */
+    public static class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long value) {
+            long clamped = Math.max(0, value);
+            buckets[64 - Long.numberOfLeadingZeros(clamped) - (clamped == 0 ? 0 : 1)].increment();
+            count.increment();
+            sum.add(clamped);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public double getMean() {
+            long n = getCount();
+            return n == 0 ? 0 : (double) getSum() / n;
+        }
+
+        /**
+         * Returns an upper bound for the given quantile (0 to 1): the top of the bucket it falls in.
+         */
+        public long getQuantileBound(double quantile) {
+            long n = getCount();
+            if (n == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(quantile * n);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= target) {
+                    return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            sum.reset();
+        }
+    }
+
+    /**
+     * Build counters for one scope: all builds, one build type or one player.
+     */
+    public static class Counters {
+        private final LongAdder builds = new LongAdder();
+        private final LongAdder cancelled = new LongAdder();
+        private final LongAdder restores = new LongAdder();
+        private final LongAdder blocksPlaced = new LongAdder();
+        private final LongAdder blocksSkipped = new LongAdder();
+        private final Histogram generationNanos = new Histogram();
+        private final Histogram applyNanos = new Histogram();
+        private final Histogram undoSnapshotBytes = new Histogram();
+
+        public long getBuilds() {
+            return builds.sum();
+        }
+
+        /**
+         * Returns the number of cancelled builds, undos and redos.
+         */
+        public long getCancelled() {
+            return cancelled.sum();
+        }
+
+        /**
+         * Returns the number of finished undos and redos.
+         */
+        public long getRestores() {
+            return restores.sum();
+        }
+
+        public long getBlocksPlaced() {
+            return blocksPlaced.sum();
+        }
+
+        public long getBlocksSkipped() {
+            return blocksSkipped.sum();
+        }
+
+        public Histogram getGenerationNanos() {
+            return generationNanos;
+        }
+
+        public Histogram getApplyNanos() {
+            return applyNanos;
+        }
+
+        public Histogram getUndoSnapshotBytes() {
+            return undoSnapshotBytes;
+        }
+
+        void reset() {
+            builds.reset();
+            cancelled.reset();
+            restores.reset();
+            blocksPlaced.reset();
+            blocksSkipped.reset();
+            generationNanos.reset();
+            applyNanos.reset();
+            undoSnapshotBytes.reset();
+        }
+    }
+
+    private static final Counters total = new Counters();
+    private static final Map<BuildType, Counters> byType = new EnumMap<>(BuildType.class);
+    private static final Map<UUID, Counters> byPlayer = new ConcurrentHashMap<>();
+    private static final Map<IoOperation, Histogram> ioNanos = new EnumMap<>(IoOperation.class);
+    private static final Histogram queueDepth = new Histogram();
+    private static final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+    private static volatile long startedMillis = System.currentTimeMillis();
+
+    static {
+        // Filled once, so concurrent readers never see the maps change
+        for (BuildType type : BuildType.values()) {
+            byType.put(type, new Counters());
+        }
+        for (IoOperation operation : IoOperation.values()) {
+            ioNanos.put(operation, new Histogram());
+        }
+    }
+
+    /**
+     * Records the time to compile and prepare a build's plan.
+     */
+    public static void recordGeneration(BuildType buildType, UUID playerId, long nanos) {
+        for (Counters counters : scopes(buildType, playerId)) {
+            counters.generationNanos.record(nanos);
+        }
+    }
+
+    /**
+     * Records a build, undo or redo that finished or was cancelled.
+     */
+    public static void recordJob(BuildJob job, long applyNanos) {
+        for (Counters counters : scopes(job.getBuildType(), job.getPlayerId())) {
+            if (job.getStatus() == BuildJob.Status.CANCELLED) {
+                counters.cancelled.increment();
+            } else if (job.getKind() != BuildJob.Kind.BUILD) {
+                counters.restores.increment();
+            } else {
+                counters.builds.increment();
+            }
+            counters.blocksPlaced.add(job.getPlacedBlocks());
+            counters.blocksSkipped.add(job.getSkippedBlocks());
+            counters.applyNanos.record(applyNanos);
+        }
+    }
+
+    public static void recordUndoSnapshot(BuildType buildType, UUID playerId, long bytes) {
+        for (Counters counters : scopes(buildType, playerId)) {
+            counters.undoSnapshotBytes.record(bytes);
+        }
+    }
+
+    public static void recordIo(IoOperation operation, long nanos) {
+        ioNanos.get(operation).record(nanos);
+    }
+
+    public static void recordQueueDepth(int depth) {
+        queueDepth.record(depth);
+        maxQueueDepth.accumulate(depth);
+    }
+
+    private static List<Counters> scopes(BuildType buildType, UUID playerId) {
+        List<Counters> scopes = new ArrayList<>(3);
+        scopes.add(total);
+        if (buildType != null) {
+            scopes.add(byType.get(buildType));
+        }
+        if (playerId != null) {
+            scopes.add(byPlayer.computeIfAbsent(playerId, id -> new Counters()));
+        }
+        return scopes;
+    }
+
+    public static Counters getTotal() {
+        return total;
+    }
+
+    public static Counters getByType(BuildType buildType) {
+        return byType.get(buildType);
+    }
+
+    /**
+     * Returns a player's counters, or null if they have not built anything.
+     */
+    public static Counters getByPlayer(UUID playerId) {
+        return byPlayer.get(playerId);
+    }
+
+    public static Histogram getIoNanos(IoOperation operation) {
+        return ioNanos.get(operation);
+    }
+
+    public static Histogram getQueueDepth() {
+        return queueDepth;
+    }
+
+    public static long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public static long getStartedMillis() {
+        return startedMillis;
+    }
+
+    public static void reset() {
+        total.reset();
+        byType.values().forEach(Counters::reset);
+        byPlayer.clear();
+        ioNanos.values().forEach(Histogram::reset);
+        queueDepth.reset();
+        maxQueueDepth.reset();
+        startedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Logs a summary line and writes the metrics file at the configured intervals.
+     * Called at the end of every server tick.
+     */
+    public static void tick(MinecraftServer server) {
+        BuilderUISettings settings = BuilderUISettings.get();
+        int interval = settings.getMetricsLogIntervalSeconds();
+        if (interval <= 0 || server.getTicks() % (interval * 20) != 0) {
+            return;
+        }
+        BuilderUIMod.LOGGER.info(getSummaryLine());
+        String metricsFile = settings.getMetricsFile();
+        if (!metricsFile.isEmpty()) {
+            String text = toPrometheusText();
+            // Keep file I/O off the server thread
+            CompletableFuture.runAsync(() -> writeMetricsFile(Paths.get(metricsFile), text));
+        }
+    }
+
+    /**
+     * Returns a one-line summary for the server log.
+     */
+    public static String getSummaryLine() {
+        return String.format(Locale.ROOT,
+                "Build metrics: %d builds (%d cancelled), %d undos/redos, %d blocks placed, %d unchanged, "
+                        + "generation avg %.1f ms, apply avg %.1f ms, queue max %d",
+                total.getBuilds(), total.getCancelled(), total.getRestores(), total.getBlocksPlaced(),
+                total.getBlocksSkipped(), total.getGenerationNanos().getMean() / 1e6,
+                total.getApplyNanos().getMean() / 1e6, getMaxQueueDepth());
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format. Each metric family is
+     * introduced by its {@code # HELP} and {@code # TYPE} lines, followed by all of its series.
+     */
+    public static String toPrometheusText() {
+        // The unlabelled series is the total; the others break it down by build type and player
+        Map<String, Counters> series = new LinkedHashMap<>();
+        series.put("", total);
+        for (Map.Entry<BuildType, Counters> entry : byType.entrySet()) {
+            series.put("type=\"" + entry.getKey().name().toLowerCase(Locale.ROOT) + "\"", entry.getValue());
+        }
+        for (Map.Entry<UUID, Counters> entry : byPlayer.entrySet()) {
+            series.put("player=\"" + entry.getKey() + "\"", entry.getValue());
+        }
+
+        StringBuilder out = new StringBuilder();
+        appendCounterFamily(out, "builderui_builds_total", "Builds completed.", series, Counters::getBuilds);
+        appendCounterFamily(out, "builderui_builds_cancelled_total",
+                "Builds, undos and redos cancelled before they finished.", series, Counters::getCancelled);
+        appendCounterFamily(out, "builderui_restores_total", "Undos and redos completed.",
+                series, Counters::getRestores);
+        appendCounterFamily(out, "builderui_blocks_placed_total", "Blocks changed by builds, undos and redos.",
+                series, Counters::getBlocksPlaced);
+        appendCounterFamily(out, "builderui_blocks_skipped_total",
+                "Blocks skipped because they were already in place.", series, Counters::getBlocksSkipped);
+        appendHistogramFamily(out, "builderui_generation_nanoseconds", "Time spent generating a build's blocks.",
+                series, Counters::getGenerationNanos);
+        appendHistogramFamily(out, "builderui_apply_nanoseconds",
+                "Time spent placing a build's blocks, summed over ticks.", series, Counters::getApplyNanos);
+        appendHistogramFamily(out, "builderui_undo_snapshot_bytes", "Estimated size of recorded undo snapshots.",
+                series, Counters::getUndoSnapshotBytes);
+
+        appendHeader(out, "builderui_template_io_nanoseconds", "histogram", "Latency of template file operations.");
+        for (Map.Entry<IoOperation, Histogram> entry : ioNanos.entrySet()) {
+            appendHistogram(out, "builderui_template_io_nanoseconds",
+                    "operation=\"" + entry.getKey().name().toLowerCase(Locale.ROOT) + "\"", entry.getValue());
+        }
+        appendHeader(out, "builderui_queue_depth", "histogram",
+                "Build queue length, sampled every tick with queued work.");
+        appendHistogram(out, "builderui_queue_depth", "", queueDepth);
+        appendHeader(out, "builderui_queue_depth_max", "gauge", "Longest build queue seen.");
+        appendValue(out, "builderui_queue_depth_max", "", getMaxQueueDepth());
+        return out.toString();
+    }
+
+    private static void appendCounterFamily(StringBuilder out, String name, String help,
+                                            Map<String, Counters> series, ToLongFunction<Counters> value) {
+        appendHeader(out, name, "counter", help);
+        for (Map.Entry<String, Counters> entry : series.entrySet()) {
+            appendValue(out, name, entry.getKey(), value.applyAsLong(entry.getValue()));
+        }
+    }
+
+    private static void appendHistogramFamily(StringBuilder out, String name, String help,
+                                              Map<String, Counters> series, Function<Counters, Histogram> histogram) {
+        appendHeader(out, name, "histogram", help);
+        for (Map.Entry<String, Counters> entry : series.entrySet()) {
+            appendHistogram(out, name, entry.getKey(), histogram.apply(entry.getValue()));
+        }
+    }
+
+    private static void appendHeader(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long cumulative = 0;
+        for (int i = 0; i < histogram.buckets.length - 1; i++) {
+            long inBucket = histogram.buckets[i].sum();
+            if (inBucket == 0) {
+                continue;
+            }
+            cumulative += inBucket;
+            String bucketLabels = (labels.isEmpty() ? "" : labels + ",") + "le=\"" + ((2L << i) - 1) + "\"";
+            appendValue(out, name + "_bucket", bucketLabels, cumulative);
+        }
+        appendValue(out, name + "_bucket", (labels.isEmpty() ? "" : labels + ",") + "le=\"+Inf\"", histogram.getCount());
+        appendValue(out, name + "_sum", labels, histogram.getSum());
+        appendValue(out, name + "_count", labels, histogram.getCount());
+    }
+
+    private static void appendValue(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void writeMetricsFile(Path path, String text) {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            // Scrapers must never read a half-written file
+            Path tempFile = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+            Files.writeString(tempFile, text);
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            BuilderUIMod.LOGGER.error("Failed to write metrics to {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package dank.builderui.util;
+
+import dank.builderui.BuilderUIMod;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Server-side queue that spreads builds, undos and redos across ticks.
+ * Each tick applies queued work units until the configured time budget is used up,
+ * so large structures never stall the server for more than a fraction of a tick.
+ * Builds whose work units are still being generated off-thread are skipped until they are ready.
+ *
+ * While {@link TickHealth} reports the server as busy the budget shrinks and ready builds over
+ * the size limit are refused. Everything else, undos and redos included, keeps running at the
+ * reduced budget, so a busy server slows builds down instead of stalling them.
+ */
+public class BuildQueue {
+    private static final Deque<BuildJob> jobs = new ArrayDeque<>();
+    private static final int TICKS_PER_SECOND = 20;
+    private static final double DEFAULT_BLOCKS_PER_MILLI = 250;
+    private static final double THROUGHPUT_SMOOTHING = 0.2;
+    private static final int MIN_THROUGHPUT_SAMPLE = 64;
+    private static int lastReportedPercent = -1;
+    // Moving average of blocks placed per millisecond of budget; read from the client thread in singleplayer
+    private static volatile double blocksPerMilli;
+
+    /**
+     * Adds a build to the end of the queue.
+     */
+    public static BuildJob submit(BuildJob job) {
+        jobs.addLast(job);
+        return job;
+    }
+
+    /**
+     * Runs queued builds for up to the configured tick budget.
+     * Called at the end of every server tick.
+     */
+    public static void tick(MinecraftServer server) {
+        TickHealth.update(server);
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        BuildMetrics.recordQueueDepth(jobs.size());
+        if (TickHealth.isOverloaded()) {
+            rejectOversizedJobs();
+        }
+        long budgetNanos = getBudgetMicros() * 1000L;
+        long start = System.nanoTime();
+        int units = runJobs(start + budgetNanos);
+        recordThroughput(units, System.nanoTime() - start);
+    }
+
+    /**
+     * Runs jobs until the deadline and returns the number of work units applied.
+     */
+    private static int runJobs(long deadline) {
+        int units = 0;
+        BuildJob job;
+        while ((job = nextRunnableJob()) != null) {
+            Throwable failure = job.getFailure();
+            if (failure != null) {
+                jobs.remove(job);
+                job.cancel();
+                BuilderUIMod.LOGGER.error("Failed to generate {} for {}", job.getDisplayName(), job.getPlayerId(), failure);
+                sendMessage(job, "§cCould not generate " + job.getDisplayName(), false);
+                continue;
+            }
+
+            int before = job.getCompletedUnits();
+            boolean finished = job.run(deadline);
+            units += job.getCompletedUnits() - before;
+            if (!finished && job.getStatus() == BuildJob.Status.QUEUED) {
+                // An undo or redo waiting for its history to be read; it is passed over until ready
+                continue;
+            }
+            if (!finished) {
+                reportProgress(job);
+                return units;
+            }
+
+            jobs.remove(job);
+            job.complete();
+            lastReportedPercent = -1;
+            if (job.isEmptyRestore()) {
+                sendMessage(job, job.getKind() == BuildJob.Kind.UNDO ? "§cNothing to undo!" : "§cNothing to redo!", false);
+            } else {
+                sendMessage(job, "§a" + job.getDisplayName() + " complete! ("
+                        + job.getPlacedBlocks() + " blocks placed, " + job.getSkippedBlocks() + " unchanged)", false);
+            }
+
+            if (System.nanoTime() >= deadline) {
+                return units;
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Returns the job to work on next: the one already running, otherwise the oldest job whose
+     * work units are ready. Jobs still generating are passed over, but never by a later job of
+     * the same player, so that player's builds, undos and redos keep their order.
+     */
+    private static BuildJob nextRunnableJob() {
+        Set<UUID> waitingPlayers = null;
+        BuildJob next = null;
+        for (BuildJob job : jobs) {
+            if (job.getStatus() == BuildJob.Status.RUNNING) {
+                return job;
+            }
+            if (next != null) {
+                continue;
+            }
+            if (!job.isReady()) {
+                if (waitingPlayers == null) {
+                    waitingPlayers = new HashSet<>();
+                }
+                waitingPlayers.add(job.getPlayerId());
+            } else if (waitingPlayers == null || !waitingPlayers.contains(job.getPlayerId())) {
+                next = job;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Removes builds that have not started and are too large to place while the server is busy.
+     */
+    private static void rejectOversizedJobs() {
+        Iterator<BuildJob> iterator = jobs.iterator();
+        while (iterator.hasNext()) {
+            BuildJob job = iterator.next();
+            int units = job.getPlannedUnits();
+            if (job.getStatus() == BuildJob.Status.QUEUED && job.getKind() == BuildJob.Kind.BUILD
+                    && units >= 0 && TickHealth.isTooLarge(units)) {
+                iterator.remove();
+                job.cancel();
+                sendMessage(job, "§c" + TickHealth.getTooLargeMessage(job.getDisplayName(), units), false);
+            }
+        }
+    }
+
+    /**
+     * Returns the tick budget in microseconds, scaled down while the server is busy.
+     */
+    private static long getBudgetMicros() {
+        return Math.max(1, Math.round(BuilderUISettings.get().getTickBudgetMicros() * TickHealth.getBudgetScale()));
+    }
+
+    /**
+     * Folds one tick's placement rate into the moving average.
+     * Ticks with only a few units are too noisy to count.
+     */
+    private static void recordThroughput(int units, long elapsedNanos) {
+        if (units < MIN_THROUGHPUT_SAMPLE || elapsedNanos <= 0) {
+            return;
+        }
+        double sample = units * 1_000_000.0 / elapsedNanos;
+        double current = blocksPerMilli;
+        blocksPerMilli = current == 0 ? sample : current + THROUGHPUT_SMOOTHING * (sample - current);
+    }
+
+    /**
+     * Returns how many blocks per second the queue places at the current tick budget,
+     * based on the measured placement rate, or on a conservative default before anything was measured.
+     * The estimate drops while the server is busy and builds get less of each tick.
+     */
+    public static double getBlocksPerSecond() {
+        double rate = blocksPerMilli > 0 ? blocksPerMilli : DEFAULT_BLOCKS_PER_MILLI;
+        return rate * getBudgetMicros() / 1000.0 * TICKS_PER_SECOND;
+    }
+
+    /**
+     * Cancels a queued or running build.
+     * Returns true if a build with the given id was found.
+     */
+    public static boolean cancel(long buildId) {
+        Iterator<BuildJob> iterator = jobs.iterator();
+        while (iterator.hasNext()) {
+            BuildJob job = iterator.next();
+            if (job.getId() == buildId) {
+                cancelJob(iterator, job);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cancels every queued or running build of a player.
+     * Returns the number of builds cancelled.
+     */
+    public static int cancelAll(UUID playerId) {
+        int cancelled = 0;
+        Iterator<BuildJob> iterator = jobs.iterator();
+        while (iterator.hasNext()) {
+            BuildJob job = iterator.next();
+            if (job.getPlayerId().equals(playerId)) {
+                cancelJob(iterator, job);
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    private static void cancelJob(Iterator<BuildJob> iterator, BuildJob job) {
+        if (job.getStatus() == BuildJob.Status.RUNNING) {
+            lastReportedPercent = -1;
+        }
+        iterator.remove();
+        job.cancel();
+        sendMessage(job, "§c" + job.getDisplayName() + " cancelled at "
+                + (int) (job.getProgress() * 100) + "%", false);
+    }
+
+    /**
+     * Returns the build with the given id, or null if it is no longer queued.
+     */
+    public static BuildJob getJob(long buildId) {
+        for (BuildJob job : jobs) {
+            if (job.getId() == buildId) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the queued and running builds of a player, oldest first.
+     */
+    public static List<BuildJob> getJobs(UUID playerId) {
+        List<BuildJob> result = new ArrayList<>();
+        for (BuildJob job : jobs) {
+            if (job.getPlayerId().equals(playerId)) {
+                result.add(job);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of builds waiting or running.
+     */
+    public static int getQueueDepth() {
+        return jobs.size();
+    }
+
+    /**
+     * Cancels all queued builds without notifying players, e.g. when the server stops.
+     * A partially placed build is still recorded for undo.
+     */
+    public static void clear() {
+        for (BuildJob job : jobs) {
+            job.cancel();
+        }
+        jobs.clear();
+        lastReportedPercent = -1;
+        TickHealth.reset();
+    }
+
+    private static void reportProgress(BuildJob job) {
+        int percent = (int) (job.getProgress() * 100);
+        if (percent != lastReportedPercent) {
+            lastReportedPercent = percent;
+            String name = job.getBuildType() != null ? job.getBuildType().getDisplayName() : "build";
+            sendMessage(job, "§e" + job.getKind().getProgressPrefix() + name + "... " + percent + "%", true);
+        }
+    }
+
+    private static void sendMessage(BuildJob job, String message, boolean actionBar) {
+        ServerPlayerEntity player = job.getPlayer();
+        if (player != null) {
+            player.sendMessage(Text.of(message), actionBar);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package dank.builderui.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for the build pipeline, so recordings show which part of a
+ * tick (or which worker thread) was spent on builds, undo history and template files.
+ *
+ * Callers follow the usual JFR pattern: create and {@code begin()} the event, do the work,
+ * then fill in the fields and commit only if {@code shouldCommit()}. With recording off that
+ * check is a constant false and the unused event is optimized away, so the cost is near zero.
+ */
+public final class BuilderEvents {
+    private static final String CATEGORY = "Builder UI";
+
+    private BuilderEvents() {
+    }
+
+    @Name("dank.builderui.BuildRequest")
+    @Label("Build Request")
+    @Description("A build accepted on the server thread, before its plan is generated")
+    @Category(CATEGORY)
+    public static class BuildRequest extends Event {
+        @Label("Build Id")
+        public long buildId;
+        @Label("Build Type")
+        public String buildType;
+        @Label("Size")
+        public String size;
+        @Label("Player")
+        public String player;
+    }
+
+    @Name("dank.builderui.PlanCompile")
+    @Label("Plan Compile")
+    @Description("Running a generator, or transforming a cached plan, to compile a block plan")
+    @Category({CATEGORY, "Generation"})
+    public static class PlanCompile extends Event {
+        @Label("Build Type")
+        public String buildType;
+        @Label("Size")
+        public String size;
+        @Label("Transformed")
+        public boolean transformed;
+        @Label("Block Count")
+        public int blockCount;
+    }
+
+    @Name("dank.builderui.PlanPrepare")
+    @Label("Plan Prepare")
+    @Description("Getting a build's plan and translating and sorting its work units on a worker")
+    @Category({CATEGORY, "Generation"})
+    public static class PlanPrepare extends Event {
+        @Label("Build Id")
+        public long buildId;
+        @Label("Build Type")
+        public String buildType;
+        @Label("Player")
+        public String player;
+        @Label("Block Count")
+        public int blockCount;
+    }
+
+    @Name("dank.builderui.BuildApply")
+    @Label("Build Apply")
+    @Description("One tick's slice of placing a build, undo or redo")
+    @Category({CATEGORY, "Placement"})
+    public static class BuildApply extends Event {
+        @Label("Build Id")
+        public long buildId;
+        @Label("Kind")
+        public String kind;
+        @Label("Build Type")
+        public String buildType;
+        @Label("Player")
+        public String player;
+        @Label("Block Count")
+        @Description("Work units applied in this slice")
+        public int blockCount;
+        @Label("Finished")
+        public boolean finished;
+    }
+
+    @Name("dank.builderui.BuildSettle")
+    @Label("Build Settle")
+    @Description("The deferred block update pass over a finished build's boundary")
+    @Category({CATEGORY, "Placement"})
+    public static class BuildSettle extends Event {
+        @Label("Build Id")
+        public long buildId;
+        @Label("Changed Blocks")
+        public int changedBlocks;
+    }
+
+    @Name("dank.builderui.UndoRecord")
+    @Label("Undo Record")
+    @Description("Storing a finished build's replaced blocks in the undo history")
+    @Category({CATEGORY, "Undo"})
+    public static class UndoRecord extends Event {
+        @Label("Build Type")
+        public String buildType;
+        @Label("Player")
+        public String player;
+        @Label("Block Count")
+        public int blockCount;
+        @Label("Snapshot Size")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("dank.builderui.UndoRequest")
+    @Label("Undo Request")
+    @Description("Queueing an undo or redo; the restore itself shows up as Build Apply events")
+    @Category({CATEGORY, "Undo"})
+    public static class UndoRequest extends Event {
+        @Label("Kind")
+        public String kind;
+        @Label("Player")
+        public String player;
+        @Label("Queued")
+        public boolean queued;
+    }
+
+    @Name("dank.builderui.TemplateIo")
+    @Label("Template I/O")
+    @Description("Saving, loading, importing or deleting a custom structure template")
+    @Category({CATEGORY, "Templates"})
+    public static class TemplateIo extends Event {
+        @Label("Operation")
+        public String operation;
+        @Label("Template")
+        public String name;
+        @Label("Block Count")
+        public int blockCount;
+        @Label("Succeeded")
+        public boolean succeeded;
+
+        /**
+         * Creates and begins an event.
+         */
+        static TemplateIo start() {
+            TemplateIo event = new TemplateIo();
+            event.begin();
+            return event;
+        }
+
+        /**
+         * Commits the event if it is being recorded. A null template means the operation failed
+         * or, for deletes, that there was no template to count.
+         */
+        void finish(BuildMetrics.IoOperation operation, String name, StructureTemplate template, boolean succeeded) {
+            if (shouldCommit()) {
+                this.operation = operation.name();
+                this.name = name;
+                this.blockCount = template != null ? template.getBlockCount() : 0;
+                this.succeeded = succeeded;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package dank.builderui.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import dank.builderui.BuilderUIMod;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Server-side settings for the build pipeline.
+ * Stored as JSON in the Fabric config directory and created with defaults on first launch.
+ */
+public class BuilderUISettings {
+    private static final Path CONFIG_PATH = FabricLoader.getInstance().getConfigDir().resolve("builderui.json");
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static BuilderUISettings instance = new BuilderUISettings();
+
+    private int tickBudgetMicros = 2000;
+    private boolean deferBlockUpdates = true;
+    private int maxBuildOffset = 16;
+    private int maxQueuedBuildsPerPlayer = 4;
+    private int maxUndoHistory = 10;
+    private int planCacheSize = 64;
+    private int templateCacheMegabytes = 64;
+    private int metricsLogIntervalSeconds = 0;
+    private String metricsFile = "";
+    private int admissionMsptThreshold = 40;
+    private int minBudgetPercent = 10;
+    private int maxBlocksUnderLoad = 20000;
+
+    /**
+     * Returns the currently loaded settings.
+     */
+    public static BuilderUISettings get() {
+        return instance;
+    }
+
+    /**
+     * Loads settings from disk, writing the defaults if no config file exists yet.
+     */
+    public static void load() {
+        try {
+            if (Files.exists(CONFIG_PATH)) {
+                BuilderUISettings loaded = GSON.fromJson(Files.readString(CONFIG_PATH), BuilderUISettings.class);
+                if (loaded != null) {
+                    instance = loaded;
+                }
+            }
+            save();
+        } catch (IOException | JsonParseException e) {
+            BuilderUIMod.LOGGER.error("Failed to load settings from {}", CONFIG_PATH, e);
+        }
+    }
+
+    /**
+     * Writes the current settings to disk.
+     */
+    public static void save() {
+        try {
+            Files.createDirectories(CONFIG_PATH.getParent());
+            Files.writeString(CONFIG_PATH, GSON.toJson(instance));
+        } catch (IOException e) {
+            BuilderUIMod.LOGGER.error("Failed to save settings to {}", CONFIG_PATH, e);
+        }
+    }
+
+    /**
+     * Time each server tick may spend placing queued blocks, in microseconds.
+     */
+    public int getTickBudgetMicros() {
+        return Math.max(1, tickBudgetMicros);
+    }
+
+    public void setTickBudgetMicros(int tickBudgetMicros) {
+        this.tickBudgetMicros = tickBudgetMicros;
+    }
+
+    /**
+     * Whether builds suppress neighbor updates and scheduled ticks while placing,
+     * then run a single update pass over the boundary of the build.
+     */
+    public boolean isDeferBlockUpdates() {
+        return deferBlockUpdates;
+    }
+
+    public void setDeferBlockUpdates(boolean deferBlockUpdates) {
+        this.deferBlockUpdates = deferBlockUpdates;
+    }
+
+    /**
+     * Largest offset from the player, per axis, that a client may request a build at.
+     */
+    public int getMaxBuildOffset() {
+        return maxBuildOffset;
+    }
+
+    public void setMaxBuildOffset(int maxBuildOffset) {
+        this.maxBuildOffset = maxBuildOffset;
+    }
+
+    /**
+     * Largest number of builds, undos and redos a player may have queued or running at once.
+     */
+    public int getMaxQueuedBuildsPerPlayer() {
+        return Math.max(1, maxQueuedBuildsPerPlayer);
+    }
+
+    public void setMaxQueuedBuildsPerPlayer(int maxQueuedBuildsPerPlayer) {
+        this.maxQueuedBuildsPerPlayer = maxQueuedBuildsPerPlayer;
+    }
+
+    /**
+     * Number of undo (and redo) steps kept per player, in memory and on disk combined.
+     */
+    public int getMaxUndoHistory() {
+        return Math.max(1, maxUndoHistory);
+    }
+
+    public void setMaxUndoHistory(int maxUndoHistory) {
+        this.maxUndoHistory = maxUndoHistory;
+    }
+
+    /**
+     * Number of compiled structure plans kept in memory for reuse.
+     */
+    public int getPlanCacheSize() {
+        return Math.max(1, planCacheSize);
+    }
+
+    public void setPlanCacheSize(int planCacheSize) {
+        this.planCacheSize = planCacheSize;
+    }
+
+    /**
+     * Heap budget for loaded custom structure templates, in megabytes.
+     */
+    public int getTemplateCacheMegabytes() {
+        return Math.max(1, templateCacheMegabytes);
+    }
+
+    public void setTemplateCacheMegabytes(int templateCacheMegabytes) {
+        this.templateCacheMegabytes = templateCacheMegabytes;
+    }
+
+    /**
+     * How often build metrics are logged (and the metrics file written), in seconds. 0 turns this off.
+     */
+    public int getMetricsLogIntervalSeconds() {
+        return Math.max(0, metricsLogIntervalSeconds);
+    }
+
+    public void setMetricsLogIntervalSeconds(int metricsLogIntervalSeconds) {
+        this.metricsLogIntervalSeconds = metricsLogIntervalSeconds;
+    }
+
+    /**
+     * File that build metrics are written to in the Prometheus text format, or empty for none.
+     */
+    public String getMetricsFile() {
+        return metricsFile != null ? metricsFile : "";
+    }
+
+    public void setMetricsFile(String metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+
+    /**
+     * Average tick time, in milliseconds, above which builds, undos and redos run at a reduced
+     * tick budget and queued builds over {@link #getMaxBlocksUnderLoad()} are refused.
+     * 0 turns admission control off.
+     */
+    public int getAdmissionMsptThreshold() {
+        return Math.max(0, admissionMsptThreshold);
+    }
+
+    public void setAdmissionMsptThreshold(int admissionMsptThreshold) {
+        this.admissionMsptThreshold = admissionMsptThreshold;
+    }
+
+    /**
+     * Smallest share of the tick budget, in percent, that builds keep while the server is busy.
+     */
+    public int getMinBudgetPercent() {
+        return Math.min(100, Math.max(1, minBudgetPercent));
+    }
+
+    public void setMinBudgetPercent(int minBudgetPercent) {
+        this.minBudgetPercent = minBudgetPercent;
+    }
+
+    /**
+     * Largest build, in blocks, that is accepted while the server is busy. 0 accepts any size.
+     */
+    public int getMaxBlocksUnderLoad() {
+        return Math.max(0, maxBlocksUnderLoad);
+    }
+
+    public void setMaxBlocksUnderLoad(int maxBlocksUnderLoad) {
+        this.maxBlocksUnderLoad = maxBlocksUnderLoad;
+    }
+}
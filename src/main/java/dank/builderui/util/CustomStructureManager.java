@@ -1,122 +1,366 @@
 package dank.builderui.util;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import net.minecraft.block.BlockState;
-import net.minecraft.util.math.BlockPos;
+import com.google.gson.JsonObject;
+import dank.builderui.BuilderUIMod;
 
 import java.io.*;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * Manages custom user-saved structures.
  * Allows saving and loading structure templates to/from disk.
+ *
+ * Templates are stored in the binary {@link TemplateCodec} format. Files saved by older
+ * versions as {@code .json} only hold metadata; they are still listed and load as empty
+ * templates with their recorded dimensions until they are saved again.
+ *
+ * Listing reads the {@link TemplateIndex} manifest, which a file watcher keeps current, and
+ * loaded templates are kept in a {@link TemplateCache} bounded by heap size. Templates edited
+ * or replaced on disk are dropped from the cache and reloaded on next use.
+ *
+ * Structures made with other tools can be brought in with {@link #importStructure(Path, String)},
+ * which reads vanilla structure files and Sponge schematics through {@link TemplateImporter}.
+ *
+ * {@link TemplatePack}s found in the structures directory at startup, or mounted later with
+ * {@link #mountPack(Path)}, add their templates to the library. Loose files override templates
+ * of the same name in packs, and earlier packs override later ones.
+ *
+ * The {@code ...Async} variants run the file work on a small dedicated I/O pool and complete
+ * their future on the game thread executor passed in (the server or the client), so callers on
+ * the render or server thread never block on the disk.
  */
 public class CustomStructureManager {
     private static final Path STRUCTURES_DIR = Paths.get("builderui_structures");
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
-    private static final Map<String, StructureTemplate> loadedStructures = new HashMap<>();
-    
+    private static final String LEGACY_EXTENSION = ".json";
+    private static final Gson GSON = new Gson();
+    private static final TemplateCache loadedStructures = new TemplateCache();
+    private static final int IO_THREADS = 2;
+    private static final int IO_QUEUE_CAPACITY = 256;
+    private static final ExecutorService IO_EXECUTOR = createIoExecutor();
+
+    private static final TemplateIndex INDEX;
+    private static final List<TemplatePack> packs = new CopyOnWriteArrayList<>();
+
     static {
         try {
             if (!Files.exists(STRUCTURES_DIR)) {
                 Files.createDirectories(STRUCTURES_DIR);
             }
         } catch (IOException e) {
-            System.err.println("Failed to create structures directory: " + e.getMessage());
+            BuilderUIMod.LOGGER.error("Failed to create structures directory", e);
+        }
+        INDEX = TemplateIndex.open(STRUCTURES_DIR);
+        INDEX.startWatching(loadedStructures::invalidate);
+        try (DirectoryStream<Path> packFiles = Files.newDirectoryStream(STRUCTURES_DIR, "*" + TemplatePack.EXTENSION)) {
+            for (Path packFile : packFiles) {
+                mountPack(packFile);
+            }
+        } catch (IOException e) {
+            BuilderUIMod.LOGGER.error("Failed to look for template packs", e);
+        }
+    }
+
+    /**
+     * Adds a template pack to the library. Returns false if it cannot be read.
+     */
+    public static boolean mountPack(Path path) {
+        try {
+            TemplatePack pack = TemplatePack.open(path);
+            packs.add(pack);
+            pack.getNames().forEach(loadedStructures::invalidate);
+            BuilderUIMod.LOGGER.info("Mounted template pack {} with {} templates", path.getFileName(), pack.getNames().size());
+            return true;
+        } catch (IOException e) {
+            BuilderUIMod.LOGGER.error("Failed to mount template pack {}", path, e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes a mounted template pack from the library.
+     */
+    public static boolean unmountPack(Path path) {
+        for (TemplatePack pack : packs) {
+            if (pack.getPath().equals(path)) {
+                packs.remove(pack);
+                pack.getNames().forEach(loadedStructures::invalidate);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static List<Path> getMountedPacks() {
+        List<Path> paths = new ArrayList<>();
+        for (TemplatePack pack : packs) {
+            paths.add(pack.getPath());
         }
+        return paths;
     }
-    
+
     /**
      * Saves a structure template to disk.
      */
     public static boolean saveStructure(StructureTemplate template) {
+        String fileName = sanitizeFileName(template.getName());
+        Path filePath = STRUCTURES_DIR.resolve(fileName + TemplateCodec.EXTENSION);
+        Path tempPath = null;
+        boolean saved = false;
+        BuilderEvents.TemplateIo event = BuilderEvents.TemplateIo.start();
+        long start = System.nanoTime();
         try {
-            Path filePath = STRUCTURES_DIR.resolve(sanitizeFileName(template.getName()) + ".json");
-            
-            // Convert template to a serializable format
-            Map<String, Object> data = new HashMap<>();
-            data.put("name", template.getName());
-            data.put("width", template.getWidth());
-            data.put("height", template.getHeight());
-            data.put("depth", template.getDepth());
-            
-            // For simplicity, just store block count
-            data.put("blockCount", template.getBlockCount());
-            
-            Files.writeString(filePath, GSON.toJson(data));
-            loadedStructures.put(template.getName(), template);
+            // Write to a temporary file first so a failed save never leaves a truncated template
+            tempPath = Files.createTempFile(STRUCTURES_DIR, fileName, ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                TemplateCodec.write(template, out, true);
+            }
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Path legacyPath = STRUCTURES_DIR.resolve(fileName + LEGACY_EXTENSION);
+            Files.deleteIfExists(legacyPath);
+            // Index the new file now, so the watcher sees it as unchanged and keeps the cached copy
+            INDEX.refresh(filePath);
+            INDEX.refresh(legacyPath);
+            loadedStructures.put(fileName, template);
+            saved = true;
             return true;
-        } catch (IOException e) {
-            System.err.println("Failed to save structure: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            BuilderUIMod.LOGGER.error("Failed to save structure {}", template.getName(), e);
+            try {
+                if (tempPath != null) {
+                    Files.deleteIfExists(tempPath);
+                }
+            } catch (IOException ignored) {
+            }
             return false;
+        } finally {
+            BuildMetrics.recordIo(BuildMetrics.IoOperation.SAVE, System.nanoTime() - start);
+            event.finish(BuildMetrics.IoOperation.SAVE, template.getName(), template, saved);
         }
     }
-    
+
     /**
      * Loads a structure template from disk.
      */
     public static StructureTemplate loadStructure(String name) {
-        if (loadedStructures.containsKey(name)) {
-            return loadedStructures.get(name);
+        String fileName = sanitizeFileName(name);
+        StructureTemplate cached = loadedStructures.get(fileName);
+        if (cached != null) {
+            return cached;
         }
-        
+
+        StructureTemplate template = null;
+        BuilderEvents.TemplateIo event = BuilderEvents.TemplateIo.start();
+        long start = System.nanoTime();
         try {
-            Path filePath = STRUCTURES_DIR.resolve(sanitizeFileName(name) + ".json");
-            if (!Files.exists(filePath)) {
-                return null;
+            Path filePath = STRUCTURES_DIR.resolve(fileName + TemplateCodec.EXTENSION);
+            if (Files.exists(filePath)) {
+                try (InputStream in = Files.newInputStream(filePath)) {
+                    template = TemplateCodec.read(in);
+                }
+            } else {
+                template = loadLegacyStructure(name, STRUCTURES_DIR.resolve(fileName + LEGACY_EXTENSION));
+                if (template == null) {
+                    template = loadFromPacks(fileName);
+                }
+                if (template == null) {
+                    return null;
+                }
             }
-            
-            String json = Files.readString(filePath);
-            // In a full implementation, this would deserialize the full structure
-            // For now, return a placeholder
-            StructureTemplate template = new StructureTemplate(name, 5, 5, 5);
-            loadedStructures.put(name, template);
+            loadedStructures.put(fileName, template);
             return template;
-        } catch (IOException e) {
-            System.err.println("Failed to load structure: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            BuilderUIMod.LOGGER.error("Failed to load structure {}", name, e);
+            template = null;
+            return null;
+        } finally {
+            BuildMetrics.recordIo(BuildMetrics.IoOperation.LOAD, System.nanoTime() - start);
+            event.finish(BuildMetrics.IoOperation.LOAD, name, template, template != null);
+        }
+    }
+
+    private static StructureTemplate loadFromPacks(String fileName) throws IOException {
+        for (TemplatePack pack : packs) {
+            // A corrupt entry is skipped, so a later pack can still provide the template
+            StructureTemplate template = pack.contains(fileName) ? pack.load(fileName) : null;
+            if (template != null) {
+                return template;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a metadata-only template saved by older versions.
+     */
+    private static StructureTemplate loadLegacyStructure(String name, Path filePath) throws IOException {
+        if (!Files.exists(filePath)) {
+            return null;
+        }
+        JsonObject data = GSON.fromJson(Files.readString(filePath), JsonObject.class);
+        return new StructureTemplate(name,
+                Math.max(1, data.get("width").getAsInt()),
+                Math.max(1, data.get("height").getAsInt()),
+                Math.max(1, data.get("depth").getAsInt()));
+    }
+
+    /**
+     * Imports a vanilla structure ({@code .nbt}) or Sponge schematic ({@code .schem}) file and
+     * saves it as a template under the given name. Returns null if the file cannot be imported.
+     */
+    public static StructureTemplate importStructure(Path source, String name) {
+        StructureTemplate imported = null;
+        BuilderEvents.TemplateIo event = BuilderEvents.TemplateIo.start();
+        long start = System.nanoTime();
+        try {
+            StructureTemplate template = TemplateImporter.importFile(source, name);
+            BuilderUIMod.LOGGER.info("Imported {} blocks from {} as {}", template.getBlockCount(), source.getFileName(), name);
+            imported = saveStructure(template) ? template : null;
+            return imported;
+        } catch (IOException | RuntimeException e) {
+            BuilderUIMod.LOGGER.error("Failed to import structure {}", source, e);
             return null;
+        } finally {
+            BuildMetrics.recordIo(BuildMetrics.IoOperation.IMPORT, System.nanoTime() - start);
+            event.finish(BuildMetrics.IoOperation.IMPORT, name, imported, imported != null);
         }
     }
-    
+
     /**
      * Lists all saved custom structures.
      */
     public static List<String> listStructures() {
-        List<String> structures = new ArrayList<>();
-        try {
-            Files.list(STRUCTURES_DIR)
-                .filter(path -> path.toString().endsWith(".json"))
-                .forEach(path -> {
-                    String name = path.getFileName().toString();
-                    name = name.substring(0, name.length() - 5); // Remove .json
-                    structures.add(name);
-                });
-        } catch (IOException e) {
-            System.err.println("Failed to list structures: " + e.getMessage());
+        if (packs.isEmpty()) {
+            return INDEX.getNames();
         }
-        return structures;
+        Set<String> names = new TreeSet<>(INDEX.getNames());
+        for (TemplatePack pack : packs) {
+            names.addAll(pack.getNames());
+        }
+        return new ArrayList<>(names);
     }
-    
+
+    /**
+     * Returns the indexed metadata of a saved structure without loading it, or null if there is none.
+     */
+    public static TemplateIndex.Entry getStructureInfo(String name) {
+        String fileName = sanitizeFileName(name);
+        TemplateIndex.Entry entry = INDEX.get(fileName);
+        for (int i = 0; entry == null && i < packs.size(); i++) {
+            entry = packs.get(i).getEntry(fileName);
+        }
+        return entry;
+    }
+
     /**
      * Deletes a saved structure.
      */
     public static boolean deleteStructure(String name) {
+        boolean deleted = false;
+        BuilderEvents.TemplateIo event = BuilderEvents.TemplateIo.start();
+        long start = System.nanoTime();
         try {
-            Path filePath = STRUCTURES_DIR.resolve(sanitizeFileName(name) + ".json");
+            String fileName = sanitizeFileName(name);
+            Path filePath = STRUCTURES_DIR.resolve(fileName + TemplateCodec.EXTENSION);
+            Path legacyPath = STRUCTURES_DIR.resolve(fileName + LEGACY_EXTENSION);
             Files.deleteIfExists(filePath);
-            loadedStructures.remove(name);
+            Files.deleteIfExists(legacyPath);
+            INDEX.refresh(filePath);
+            INDEX.refresh(legacyPath);
+            loadedStructures.invalidate(fileName);
+            deleted = true;
             return true;
         } catch (IOException e) {
-            System.err.println("Failed to delete structure: " + e.getMessage());
+            BuilderUIMod.LOGGER.error("Failed to delete structure {}", name, e);
             return false;
+        } finally {
+            BuildMetrics.recordIo(BuildMetrics.IoOperation.DELETE, System.nanoTime() - start);
+            event.finish(BuildMetrics.IoOperation.DELETE, name, null, deleted);
         }
     }
-    
-    private static String sanitizeFileName(String name) {
+
+    static String sanitizeFileName(String name) {
         return name.replaceAll("[^a-zA-Z0-9_-]", "_");
     }
+
+    /**
+     * Saves a template on the I/O pool. The template must not be modified until the future completes.
+     */
+    public static CompletableFuture<Boolean> saveStructureAsync(StructureTemplate template, Executor gameThread) {
+        // Fold pending writes now, so the I/O thread only reads the template
+        template.prepareForConcurrentReads();
+        return runAsync(() -> saveStructure(template), gameThread);
+    }
+
+    /**
+     * Loads a template on the I/O pool. Completes with null if it does not exist or cannot be read.
+     */
+    public static CompletableFuture<StructureTemplate> loadStructureAsync(String name, Executor gameThread) {
+        StructureTemplate cached = loadedStructures.get(sanitizeFileName(name));
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return runAsync(() -> loadStructure(name), gameThread);
+    }
+
+    public static CompletableFuture<StructureTemplate> importStructureAsync(Path source, String name, Executor gameThread) {
+        return runAsync(() -> importStructure(source, name), gameThread);
+    }
+
+    public static CompletableFuture<List<String>> listStructuresAsync(Executor gameThread) {
+        return runAsync(CustomStructureManager::listStructures, gameThread);
+    }
+
+    public static CompletableFuture<Boolean> deleteStructureAsync(String name, Executor gameThread) {
+        return runAsync(() -> deleteStructure(name), gameThread);
+    }
+
+    /**
+     * Runs a task on the I/O pool and completes the returned future on the game thread,
+     * whether the task succeeds or fails. If the pool's queue is full the future fails
+     * with a RejectedExecutionException instead of blocking the caller.
+     */
+    private static <T> CompletableFuture<T> runAsync(Supplier<T> task, Executor gameThread) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<T> io;
+        try {
+            io = CompletableFuture.supplyAsync(task, IO_EXECUTOR);
+        } catch (RuntimeException e) {
+            io = CompletableFuture.failedFuture(e);
+        }
+        io.whenComplete((value, error) -> gameThread.execute(() -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        }));
+        return result;
+    }
+
+    private static ExecutorService createIoExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(IO_QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "BuilderUI Template IO #" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
@@ -0,0 +1,70 @@
+package dank.builderui.util;
+
+/**
+ * One 16-bit cell per position of the volume, holding the palette id plus one (0 means empty).
+ * Used for mostly filled templates, where it beats any per-block structure.
+ */
+class DenseTemplateStorage extends TemplateStorage {
+    private final short[] cells;
+    private int size;
+
+    DenseTemplateStorage(int volume) {
+        this.cells = new short[volume];
+    }
+
+    private DenseTemplateStorage(short[] cells, int size) {
+        this.cells = cells;
+        this.size = size;
+    }
+
+    /**
+     * Wraps cells that were filled directly, e.g. by a parallel resample.
+     */
+    static DenseTemplateStorage wrap(short[] cells) {
+        int size = 0;
+        for (short cell : cells) {
+            if (cell != 0) {
+                size++;
+            }
+        }
+        return new DenseTemplateStorage(cells, size);
+    }
+
+    @Override
+    int get(int index) {
+        return (cells[index] & 0xFFFF) - 1;
+    }
+
+    @Override
+    void set(int index, int stateId) {
+        if (cells[index] == 0) {
+            size++;
+        }
+        cells[index] = (short) (stateId + 1);
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    void forEach(IndexVisitor visitor) {
+        for (int i = 0; i < cells.length; i++) {
+            int cell = cells[i] & 0xFFFF;
+            if (cell != 0) {
+                visitor.visit(i, cell - 1);
+            }
+        }
+    }
+
+    @Override
+    TemplateStorage copy() {
+        return new DenseTemplateStorage(cells.clone(), size);
+    }
+
+    @Override
+    long getMemoryBytes() {
+        return 32L + 2L * cells.length;
+    }
+}
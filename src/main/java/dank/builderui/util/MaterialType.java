@@ -3,6 +3,9 @@ package dank.builderui.util;
 import net.minecraft.block.Block;
 import net.minecraft.block.Blocks;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * Enum representing material types for building structures.
  * Each material has a primary block, secondary block, and decorative block.
@@ -18,6 +21,25 @@ public enum MaterialType {
     PRISMARINE("Prismarine", Blocks.PRISMARINE, Blocks.PRISMARINE_BRICKS, Blocks.DARK_PRISMARINE),
     CONCRETE("Concrete", Blocks.WHITE_CONCRETE, Blocks.LIGHT_GRAY_CONCRETE, Blocks.GRAY_CONCRETE);
     
+    /**
+     * The part a block plays in a material's look.
+     */
+    public enum Role {
+        PRIMARY,
+        SECONDARY,
+        DECORATIVE
+    }
+    
+    private static final Map<Block, Role> ROLES = new IdentityHashMap<>();
+    
+    static {
+        for (MaterialType material : values()) {
+            for (Role role : Role.values()) {
+                ROLES.putIfAbsent(material.getBlock(role), role);
+            }
+        }
+    }
+    
     private final String displayName;
     private final Block primaryBlock;
     private final Block secondaryBlock;
@@ -45,4 +67,19 @@ public enum MaterialType {
     public Block getDecorativeBlock() {
         return decorativeBlock;
     }
+    
+    public Block getBlock(Role role) {
+        return switch (role) {
+            case PRIMARY -> primaryBlock;
+            case SECONDARY -> secondaryBlock;
+            case DECORATIVE -> decorativeBlock;
+        };
+    }
+    
+    /**
+     * Returns the role a block has in any material, or null if it is not a material block.
+     */
+    public static Role getRole(Block block) {
+        return ROLES.get(block);
+    }
 }
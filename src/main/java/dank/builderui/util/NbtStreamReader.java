@@ -0,0 +1,172 @@
+package dank.builderui.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Pull reader for the NBT binary format that never builds a tag tree.
+ *
+ * The caller walks the document: {@link #nextEntry()} returns the type of the next entry
+ * of the current compound (and makes its name available), after which the caller either
+ * reads the payload with the typed methods or skips it with {@link #skip(int)}.
+ * Gzip-compressed input, as used by structure and schematic files, is detected automatically.
+ */
+public class NbtStreamReader implements AutoCloseable {
+    public static final int END = 0;
+    public static final int BYTE = 1;
+    public static final int SHORT = 2;
+    public static final int INT = 3;
+    public static final int LONG = 4;
+    public static final int FLOAT = 5;
+    public static final int DOUBLE = 6;
+    public static final int BYTE_ARRAY = 7;
+    public static final int STRING = 8;
+    public static final int LIST = 9;
+    public static final int COMPOUND = 10;
+    public static final int INT_ARRAY = 11;
+    public static final int LONG_ARRAY = 12;
+
+    private static final int MAX_DEPTH = 512;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataInputStream in;
+    private String name;
+    private int listType;
+
+    public NbtStreamReader(InputStream source) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(source, BUFFER_SIZE);
+        buffered.mark(2);
+        boolean gzip = buffered.read() == 0x1F && buffered.read() == 0x8B;
+        buffered.reset();
+        InputStream body = gzip
+                ? new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE)
+                : buffered;
+        this.in = new DataInputStream(body);
+    }
+
+    /**
+     * Reads the root tag's type and name. The payload follows.
+     */
+    public int readRoot() throws IOException {
+        return nextEntry();
+    }
+
+    /**
+     * Reads the header of the next entry in the current compound.
+     * Returns {@link #END} once the compound is finished.
+     */
+    public int nextEntry() throws IOException {
+        int type = in.readUnsignedByte();
+        name = type == END ? null : in.readUTF();
+        return type;
+    }
+
+    /**
+     * Returns the name of the entry last returned by {@link #nextEntry()}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Reads a list header and returns its length. The element type is then available from {@link #getListType()}.
+     */
+    public int readListHeader() throws IOException {
+        listType = in.readUnsignedByte();
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative NBT list length");
+        }
+        return length;
+    }
+
+    public int getListType() {
+        return listType;
+    }
+
+    /**
+     * Reads the length of a byte, int or long array. The elements follow in {@link #input()}.
+     */
+    public int readArrayLength() throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative NBT array length");
+        }
+        return length;
+    }
+
+    public byte readByte() throws IOException {
+        return in.readByte();
+    }
+
+    public short readShort() throws IOException {
+        return in.readShort();
+    }
+
+    public int readInt() throws IOException {
+        return in.readInt();
+    }
+
+    public long readLong() throws IOException {
+        return in.readLong();
+    }
+
+    public String readString() throws IOException {
+        return in.readUTF();
+    }
+
+    /**
+     * Returns the underlying stream, for reading array elements without copying them.
+     */
+    public DataInputStream input() {
+        return in;
+    }
+
+    /**
+     * Skips the payload of a tag of the given type.
+     */
+    public void skip(int type) throws IOException {
+        skip(type, 0);
+    }
+
+    private void skip(int type, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("NBT nested too deeply");
+        }
+        switch (type) {
+            case END -> {
+            }
+            case BYTE -> in.skipNBytes(1);
+            case SHORT -> in.skipNBytes(2);
+            case INT, FLOAT -> in.skipNBytes(4);
+            case LONG, DOUBLE -> in.skipNBytes(8);
+            case BYTE_ARRAY -> in.skipNBytes(readArrayLength());
+            case INT_ARRAY -> in.skipNBytes(4L * readArrayLength());
+            case LONG_ARRAY -> in.skipNBytes(8L * readArrayLength());
+            case STRING -> in.skipNBytes(in.readUnsignedShort());
+            case LIST -> {
+                int length = readListHeader();
+                int elementType = listType;
+                for (int i = 0; i < length; i++) {
+                    skip(elementType, depth + 1);
+                }
+            }
+            case COMPOUND -> {
+                int entryType;
+                while ((entryType = in.readUnsignedByte()) != END) {
+                    in.skipNBytes(in.readUnsignedShort());
+                    skip(entryType, depth + 1);
+                }
+            }
+            default -> throw new IOException("Unknown NBT tag type " + type);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,137 @@
+package dank.builderui.util;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.ChunkLightProvider;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+import java.util.Map;
+
+/**
+ * Bulk block placement backend that writes states straight into chunk section palettes.
+ * Placements should arrive grouped by chunk section; the placer keeps the current section
+ * open and settles lighting, saving and client sync for it in one go when it moves on.
+ *
+ * Unlike {@link net.minecraft.world.World#setBlockState}, this skips neighbor updates,
+ * scheduled ticks, onBlockAdded callbacks and per-block packets; {@link BoundaryUpdater}
+ * runs the updates that matter once the build is done. States with block entities are
+ * routed through the regular world path (without neighbor updates) so their block
+ * entities are created and removed properly.
+ */
+public class SectionPlacer {
+    private final ServerWorld world;
+    private final BlockPos.Mutable mutable = new BlockPos.Mutable();
+    private WorldChunk chunk;
+    private ChunkSection section;
+    private long sectionKey = Long.MIN_VALUE;
+    private boolean sectionWasEmpty;
+    private boolean sectionChanged;
+
+    public SectionPlacer(ServerWorld world) {
+        this.world = world;
+    }
+
+    /**
+     * Returns the current state at a packed block position.
+     */
+    public BlockState getBlockState(long packedPos) {
+        mutable.set(packedPos);
+        if (world.isOutOfHeightLimit(mutable)) {
+            return world.getBlockState(mutable);
+        }
+        openSection(packedPos);
+        return section.getBlockState(mutable.getX() & 15, mutable.getY() & 15, mutable.getZ() & 15);
+    }
+
+    /**
+     * Places a state at a packed block position and returns the state it replaced.
+     * Nothing is written if the position already has the state, so callers can
+     * compare the result with the requested state to detect no-ops.
+     * Positions outside the world height are ignored and reported as no-ops.
+     */
+    public BlockState place(long packedPos, BlockState state) {
+        mutable.set(packedPos);
+        if (world.isOutOfHeightLimit(mutable)) {
+            return state;
+        }
+        openSection(packedPos);
+
+        int localX = mutable.getX() & 15;
+        int localY = mutable.getY() & 15;
+        int localZ = mutable.getZ() & 15;
+        BlockState previous = section.getBlockState(localX, localY, localZ);
+        if (previous == state) {
+            return previous;
+        }
+
+        if (previous.hasBlockEntity() || state.hasBlockEntity()) {
+            // Block entities need the full vanilla path; settle this section first
+            flush();
+            world.setBlockState(mutable, state, Block.NOTIFY_LISTENERS | Block.FORCE_STATE);
+            return previous;
+        }
+
+        section.setBlockState(localX, localY, localZ, state, false);
+        sectionChanged = true;
+
+        for (Map.Entry<Heightmap.Type, Heightmap> entry : chunk.getHeightmaps()) {
+            entry.getValue().trackUpdate(localX, mutable.getY(), localZ, state);
+        }
+        if (ChunkLightProvider.needsLightUpdate(chunk, mutable, previous, state)) {
+            chunk.getChunkSkyLight().isSkyLightAccessible(chunk, localX, mutable.getY(), localZ);
+            world.getChunkManager().getLightingProvider().checkBlock(mutable);
+        }
+        world.onBlockChanged(mutable, previous, state);
+        // Changes are collected per section by the chunk holder and sent as one delta packet
+        world.getChunkManager().markForUpdate(mutable);
+        return previous;
+    }
+
+    /**
+     * Finishes the open section: updates its light status if it became empty or non-empty
+     * and marks the chunk for saving. Must be called before yielding the tick.
+     */
+    public void flush() {
+        if (section != null && sectionChanged) {
+            boolean empty = section.isEmpty();
+            if (empty != sectionWasEmpty) {
+                LightingProvider lighting = world.getChunkManager().getLightingProvider();
+                lighting.setSectionStatus(ChunkSectionPos.from(sectionKey), empty);
+            }
+            chunk.setNeedsSaving(true);
+        }
+        chunk = null;
+        section = null;
+        sectionKey = Long.MIN_VALUE;
+        sectionChanged = false;
+    }
+
+    private void openSection(long packedPos) {
+        long key = sectionKey(packedPos);
+        if (key == sectionKey) {
+            return;
+        }
+        flush();
+        chunk = world.getChunk(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(packedPos)),
+                ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(packedPos)));
+        section = chunk.getSection(chunk.getSectionIndex(BlockPos.unpackLongY(packedPos)));
+        sectionKey = key;
+        sectionWasEmpty = section.isEmpty();
+    }
+
+    /**
+     * Returns the chunk section key used to group placements.
+     */
+    public static long sectionKey(long packedPos) {
+        return ChunkSectionPos.asLong(
+                ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(packedPos)),
+                ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(packedPos)),
+                ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(packedPos)));
+    }
+}
@@ -0,0 +1,188 @@
+package dank.builderui.util;
+
+import it.unimi.dsi.fastutil.ints.Int2ShortOpenHashMap;
+
+import java.util.Arrays;
+
+/**
+ * One occupancy bit per position of the volume, plus the palette ids of the occupied
+ * positions in index order. A position's id is found by ranking its bit, using prefix
+ * counts per 64-bit word that are extended lazily up to the word being ranked.
+ *
+ * Writes in ascending index order (what the template loaders produce) are appended in place,
+ * and writes to occupied positions overwrite in place. Out-of-order writes to new positions
+ * go to a hash map that reads consult first; it is merged in one pass once it holds a fixed
+ * share of the template, so the merge cost is spread over the writes that caused it.
+ */
+class SparseTemplateStorage extends TemplateStorage {
+    private static final int MIN_PENDING = 64;
+
+    private final long[] occupied;
+    private short[] values = new short[16];
+    private int count;
+    private int lastIndex = -1;
+    private int[] wordRanks;
+    private int rankedWords;
+    // Positions not yet in the bitset, so they never overlap the occupied ones
+    private final Int2ShortOpenHashMap pending = new Int2ShortOpenHashMap();
+
+    SparseTemplateStorage(int volume) {
+        this.occupied = new long[(volume + 63) >>> 6];
+        pending.defaultReturnValue((short) -1);
+    }
+
+    private SparseTemplateStorage(SparseTemplateStorage other) {
+        this.occupied = other.occupied.clone();
+        this.values = Arrays.copyOf(other.values, Math.max(16, other.count));
+        this.count = other.count;
+        this.lastIndex = other.lastIndex;
+        pending.defaultReturnValue((short) -1);
+    }
+
+    @Override
+    int get(int index) {
+        if (isOccupied(index)) {
+            return values[rank(index)] & 0xFFFF;
+        }
+        // MAX_STATE_ID keeps real ids clear of the map's -1 default
+        short pendingValue = pending.get(index);
+        return pendingValue == -1 ? -1 : pendingValue & 0xFFFF;
+    }
+
+    @Override
+    void set(int index, int stateId) {
+        if (isOccupied(index)) {
+            values[rank(index)] = (short) stateId;
+            return;
+        }
+        // Pending positions all lie below lastIndex, so appending keeps the values in index order
+        if (index > lastIndex) {
+            occupied[index >>> 6] |= 1L << index;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = (short) stateId;
+            lastIndex = index;
+            // Prefix counts up to this word are unaffected
+            rankedWords = Math.min(rankedWords, (index >>> 6) + 1);
+            return;
+        }
+
+        pending.put(index, (short) stateId);
+        if (pending.size() > Math.max(MIN_PENDING, Math.max(count >>> 2, occupied.length >>> 3))) {
+            merge();
+        }
+    }
+
+    /**
+     * Returns the number of non-empty positions. Constant time; pending writes are not merged.
+     */
+    @Override
+    int size() {
+        return count + pending.size();
+    }
+
+    @Override
+    void forEach(IndexVisitor visitor) {
+        merge();
+        int valueIndex = 0;
+        for (int word = 0; word < occupied.length; word++) {
+            long bits = occupied[word];
+            while (bits != 0) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                visitor.visit((word << 6) | bit, values[valueIndex++] & 0xFFFF);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    @Override
+    void prepareForConcurrentReads() {
+        merge();
+        if (count > 0) {
+            // Every occupied position lies at or below lastIndex
+            rank(lastIndex);
+        }
+    }
+
+    @Override
+    TemplateStorage copy() {
+        merge();
+        return new SparseTemplateStorage(this);
+    }
+
+    @Override
+    long getMemoryBytes() {
+        return 64L + 8L * occupied.length + 2L * values.length
+                + (wordRanks != null ? 4L * wordRanks.length : 0)
+                // Open addressing at the default load factor
+                + 8L * pending.size();
+    }
+
+    private boolean isOccupied(int index) {
+        return (occupied[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private int rank(int index) {
+        int word = index >>> 6;
+        if (word >= rankedWords) {
+            if (wordRanks == null) {
+                wordRanks = new int[occupied.length];
+            }
+            int total = rankedWords == 0 ? 0 : wordRanks[rankedWords - 1] + Long.bitCount(occupied[rankedWords - 1]);
+            for (int i = rankedWords; i <= word; i++) {
+                wordRanks[i] = total;
+                total += Long.bitCount(occupied[i]);
+            }
+            rankedWords = word + 1;
+        }
+        return wordRanks[word] + Long.bitCount(occupied[word] & ((1L << index) - 1));
+    }
+
+    /**
+     * Folds pending out-of-order writes into the bitset and value array.
+     */
+    private void merge() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        int[] addedIndices = pending.keySet().toIntArray();
+        Arrays.sort(addedIndices);
+        int added = addedIndices.length;
+        short[] addedValues = new short[added];
+        for (int i = 0; i < added; i++) {
+            addedValues[i] = pending.get(addedIndices[i]);
+        }
+        pending.clear();
+        pending.trim();
+
+        // Interleave the new positions with the existing ones in index order
+        short[] merged = new short[Math.max(16, count + added)];
+        int next = 0;
+        int old = 0;
+        int out = 0;
+        for (int word = 0; word < occupied.length; word++) {
+            long bits = occupied[word];
+            while (bits != 0) {
+                int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                while (next < added && addedIndices[next] < index) {
+                    merged[out++] = addedValues[next++];
+                }
+                merged[out++] = values[old++];
+                bits &= bits - 1;
+            }
+        }
+        while (next < added) {
+            merged[out++] = addedValues[next++];
+        }
+
+        for (int i = 0; i < added; i++) {
+            occupied[addedIndices[i] >>> 6] |= 1L << addedIndices[i];
+        }
+        values = merged;
+        count = out;
+        lastIndex = Math.max(lastIndex, addedIndices[added - 1]);
+        rankedWords = 0;
+    }
+}
@@ -1,47 +1,124 @@
 package dank.builderui.util;
 
 import net.minecraft.block.Block;
-import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.World;
+import net.minecraft.world.BlockView;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Enhanced structure builder with support for multiple build types and configurations.
  * Provides methods to build various structures with customizable materials and sizes.
+ *
+ * Generators only describe geometry in a {@link BlockPlan} and never touch the world, so
+ * builds compile their plan on a small worker pool; the server thread only places the result.
  */
 public class StructureBuilder {
+    private static final int PLAN_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int PLAN_QUEUE_CAPACITY = 64;
+    private static final ExecutorService PLAN_EXECUTOR = createPlanExecutor();
 
     /**
      * Builds a structure based on the provided configuration.
+     * The plan is generated on the worker pool, then the blocks are queued on the
+     * {@link BuildQueue} and placed over the following ticks.
+     * Returns the queued job, or null when called on the client.
      */
-    public static void build(PlayerEntity player, BuildConfig config) {
-        if (player == null) return;
-        World world = player.getWorld();
-        if (world.isClient) return;
+    public static BuildJob build(PlayerEntity player, BuildConfig config) {
+        if (player == null) return null;
+        if (!(player.getWorld() instanceof ServerWorld world)) return null;
 
         BlockPos origin = player.getBlockPos().add(config.getOffsetX(), config.getOffsetY(), config.getOffsetZ());
-        Map<BlockPos, BlockState> originalStates = new HashMap<>();
+        return build(world, origin, player.getUuid(), config);
+    }
 
-        switch (config.getBuildType()) {
-            case HOUSE -> buildHouseInternal(world, origin, config, originalStates);
-            case TOWER -> buildTowerInternal(world, origin, config, originalStates);
-            case MANSION -> buildMansionInternal(world, origin, config, originalStates);
-            case FARM -> buildFarmInternal(world, origin, config, originalStates);
-            case CASTLE -> buildCastleInternal(world, origin, config, originalStates);
-            case BRIDGE -> buildBridgeInternal(world, origin, config, originalStates);
-            case FOUNTAIN -> buildFountainInternal(world, origin, config, originalStates);
-            case TREEHOUSE -> buildTreehouseInternal(world, origin, config, originalStates);
-            case WALL -> buildWallInternal(world, origin, config, originalStates);
-            case ROAD -> buildRoadInternal(world, origin, config, originalStates);
+    /**
+     * Builds a structure at an explicit origin on behalf of a player id, who does not need to be online.
+     * The configuration's offsets are ignored.
+     */
+    public static BuildJob build(ServerWorld world, BlockPos origin, UUID playerId, BuildConfig config) {
+        BuilderEvents.BuildRequest event = new BuilderEvents.BuildRequest();
+        event.begin();
+
+        BuildJob job = new BuildJob(world, playerId, config.getBuildType());
+        // The worker must not see later changes to the caller's config
+        BuildConfig snapshot = config.copy();
+        job.placeAsync(() -> getPlan(snapshot), origin, PLAN_EXECUTOR);
+
+        // Undo is recorded by the job once its blocks have been placed
+        BuildJob queued = BuildQueue.submit(job);
+
+        if (event.shouldCommit()) {
+            event.buildId = job.getId();
+            event.buildType = config.getBuildType().name();
+            event.size = config.getSize().name();
+            event.player = playerId.toString();
+            event.commit();
         }
+        return queued;
+    }
 
-        // Record action for undo
-        UndoManager.recordAction(player.getUuid(), originalStates);
+    /**
+     * Returns the compiled plan for a configuration, relative to the build origin.
+     * Plans are cached, so repeated builds with the same settings skip generation.
+     */
+    public static BlockPlan getPlan(BuildConfig config) {
+        return BlockPlanCache.get(BlockPlanCache.Key.of(config), StructureBuilder::compilePlan);
+    }
+
+    /**
+     * Compiles a plan without consulting the cache for the key itself. Package-visible for benchmarks.
+     */
+    static BlockPlan compilePlan(BlockPlanCache.Key key) {
+        BuilderEvents.PlanCompile event = new BuilderEvents.PlanCompile();
+        event.begin();
+
+        BlockPlan plan = key.isTransformed() ? transformPlan(key) : generatePlan(key);
+
+        if (event.shouldCommit()) {
+            event.buildType = key.buildType().name();
+            event.size = key.size().name();
+            event.transformed = key.isTransformed();
+            event.blockCount = plan.size();
+            event.commit();
+        }
+        return plan;
+    }
+
+    private static BlockPlan transformPlan(BlockPlanCache.Key key) {
+        // Generators work in the default orientation; other orientations reuse that plan
+        BlockPlan base = BlockPlanCache.get(key.untransformed(), StructureBuilder::compilePlan);
+        BuildConfig config = key.toConfig();
+        return base.transform(config.getMirror(), config.getBlockRotation());
+    }
+
+    private static BlockPlan generatePlan(BlockPlanCache.Key key) {
+        BlockPlan.Builder plan = new BlockPlan.Builder();
+        BuildConfig config = key.toConfig();
+
+        switch (config.getBuildType()) {
+            case HOUSE -> buildHouseInternal(plan, config);
+            case TOWER -> buildTowerInternal(plan, config);
+            case MANSION -> buildMansionInternal(plan, config);
+            case FARM -> buildFarmInternal(plan, config);
+            case CASTLE -> buildCastleInternal(plan, config);
+            case BRIDGE -> buildBridgeInternal(plan, config);
+            case FOUNTAIN -> buildFountainInternal(plan, config);
+            case TREEHOUSE -> buildTreehouseInternal(plan, config);
+            case WALL -> buildWallInternal(plan, config);
+            case ROAD -> buildRoadInternal(plan, config);
+        }
+        return plan.build();
     }
 
     /**
@@ -60,7 +137,7 @@ public class StructureBuilder {
         build(player, config);
     }
 
-    private static void buildHouseInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildHouseInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block primaryBlock = config.getMaterial().getPrimaryBlock();
         Block roofBlock = config.getMaterial().getSecondaryBlock();
         float scale = config.getSize().getScale();
@@ -73,45 +150,36 @@ public class StructureBuilder {
         for (int x = 0; x < width; x++) {
             for (int z = 0; z < depth; z++) {
                 for (int y = 0; y < height; y++) {
-                    BlockPos pos = origin.add(x, y, z);
-                    originalStates.put(pos, world.getBlockState(pos));
-                    
                     boolean wall = x == 0 || x == width - 1 || z == 0 || z == depth - 1;
                     if (wall || y == 0) {
-                        world.setBlockState(pos, primaryBlock.getDefaultState());
+                        plan.set(x, y, z, primaryBlock.getDefaultState());
                     }
                 }
             }
         }
 
         // Add door
-        BlockPos doorPos = origin.add(width / 2, 1, 0);
-        originalStates.put(doorPos, world.getBlockState(doorPos));
-        world.setBlockState(doorPos, Blocks.AIR.getDefaultState());
+        plan.set(width / 2, 1, 0, Blocks.AIR.getDefaultState());
 
         // Build roof
         for (int x = -1; x <= width; x++) {
             for (int z = -1; z <= depth; z++) {
-                BlockPos roofPos = origin.add(x, height, z);
-                originalStates.put(roofPos, world.getBlockState(roofPos));
-                world.setBlockState(roofPos, roofBlock.getDefaultState());
+                plan.set(x, height, z, roofBlock.getDefaultState());
             }
         }
     }
 
-    private static void buildTowerInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildTowerInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block block = config.getMaterial().getPrimaryBlock();
         float scale = config.getSize().getScale();
         int height = (int)(10 * scale);
 
         for (int y = 0; y < height; y++) {
-            BlockPos pos = origin.up(y);
-            originalStates.put(pos, world.getBlockState(pos));
-            world.setBlockState(pos, block.getDefaultState());
+            plan.set(0, y, 0, block.getDefaultState());
         }
     }
 
-    private static void buildMansionInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildMansionInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block primaryBlock = config.getMaterial().getPrimaryBlock();
         Block secondaryBlock = config.getMaterial().getSecondaryBlock();
         Block decorativeBlock = config.getMaterial().getDecorativeBlock();
@@ -125,18 +193,15 @@ public class StructureBuilder {
         for (int x = 0; x < width; x++) {
             for (int z = 0; z < depth; z++) {
                 for (int y = 0; y < height; y++) {
-                    BlockPos pos = origin.add(x, y, z);
-                    originalStates.put(pos, world.getBlockState(pos));
-                    
                     boolean wall = x == 0 || x == width - 1 || z == 0 || z == depth - 1;
                     boolean floor = y % 4 == 0;
                     
                     if (wall) {
                         // Alternate primary and decorative blocks for walls
                         Block wallBlock = (x + z + y) % 2 == 0 ? primaryBlock : decorativeBlock;
-                        world.setBlockState(pos, wallBlock.getDefaultState());
+                        plan.set(x, y, z, wallBlock.getDefaultState());
                     } else if (floor) {
-                        world.setBlockState(pos, secondaryBlock.getDefaultState());
+                        plan.set(x, y, z, secondaryBlock.getDefaultState());
                     }
                 }
             }
@@ -144,22 +209,18 @@ public class StructureBuilder {
 
         // Add entrance
         for (int i = 0; i < 2; i++) {
-            BlockPos doorPos = origin.add(width / 2, i + 1, 0);
-            originalStates.put(doorPos, world.getBlockState(doorPos));
-            world.setBlockState(doorPos, Blocks.AIR.getDefaultState());
+            plan.set(width / 2, i + 1, 0, Blocks.AIR.getDefaultState());
         }
 
         // Add decorative roof
         for (int x = -1; x <= width; x++) {
             for (int z = -1; z <= depth; z++) {
-                BlockPos roofPos = origin.add(x, height, z);
-                originalStates.put(roofPos, world.getBlockState(roofPos));
-                world.setBlockState(roofPos, decorativeBlock.getDefaultState());
+                plan.set(x, height, z, decorativeBlock.getDefaultState());
             }
         }
     }
 
-    private static void buildFarmInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildFarmInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block fenceBlock = Blocks.OAK_FENCE;
         float scale = config.getSize().getScale();
         
@@ -170,9 +231,7 @@ public class StructureBuilder {
         for (int x = 0; x < width; x++) {
             for (int z = 0; z < depth; z++) {
                 if (x == 0 || x == width - 1 || z == 0 || z == depth - 1) {
-                    BlockPos pos = origin.add(x, 0, z);
-                    originalStates.put(pos, world.getBlockState(pos));
-                    world.setBlockState(pos, fenceBlock.getDefaultState());
+                    plan.set(x, 0, z, fenceBlock.getDefaultState());
                 }
             }
         }
@@ -180,19 +239,15 @@ public class StructureBuilder {
         // Add farmland inside
         for (int x = 1; x < width - 1; x++) {
             for (int z = 1; z < depth - 1; z++) {
-                BlockPos pos = origin.add(x, 0, z);
-                originalStates.put(pos, world.getBlockState(pos));
-                world.setBlockState(pos, Blocks.FARMLAND.getDefaultState());
+                plan.set(x, 0, z, Blocks.FARMLAND.getDefaultState());
             }
         }
 
         // Add water source in center
-        BlockPos waterPos = origin.add(width / 2, 0, depth / 2);
-        originalStates.put(waterPos, world.getBlockState(waterPos));
-        world.setBlockState(waterPos, Blocks.WATER.getDefaultState());
+        plan.set(width / 2, 0, depth / 2, Blocks.WATER.getDefaultState());
     }
 
-    private static void buildCastleInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildCastleInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block primaryBlock = config.getMaterial().getPrimaryBlock();
         Block secondaryBlock = config.getMaterial().getSecondaryBlock();
         float scale = config.getSize().getScale();
@@ -205,12 +260,9 @@ public class StructureBuilder {
         for (int x = 0; x < width; x++) {
             for (int z = 0; z < depth; z++) {
                 for (int y = 0; y < height; y++) {
-                    BlockPos pos = origin.add(x, y, z);
-                    originalStates.put(pos, world.getBlockState(pos));
-                    
                     boolean outerWall = x == 0 || x == width - 1 || z == 0 || z == depth - 1;
                     if (outerWall || y == 0) {
-                        world.setBlockState(pos, primaryBlock.getDefaultState());
+                        plan.set(x, y, z, primaryBlock.getDefaultState());
                     }
                 }
             }
@@ -222,21 +274,17 @@ public class StructureBuilder {
         
         for (int[] corner : corners) {
             for (int y = 0; y < towerHeight; y++) {
-                BlockPos pos = origin.add(corner[0], y, corner[1]);
-                originalStates.put(pos, world.getBlockState(pos));
-                world.setBlockState(pos, secondaryBlock.getDefaultState());
+                plan.set(corner[0], y, corner[1], secondaryBlock.getDefaultState());
             }
         }
 
         // Add entrance
         for (int i = 0; i < 3; i++) {
-            BlockPos doorPos = origin.add(width / 2, i + 1, 0);
-            originalStates.put(doorPos, world.getBlockState(doorPos));
-            world.setBlockState(doorPos, Blocks.AIR.getDefaultState());
+            plan.set(width / 2, i + 1, 0, Blocks.AIR.getDefaultState());
         }
     }
 
-    private static void buildBridgeInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildBridgeInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block primaryBlock = config.getMaterial().getPrimaryBlock();
         Block railBlock = config.getMaterial().getDecorativeBlock();
         float scale = config.getSize().getScale();
@@ -247,21 +295,17 @@ public class StructureBuilder {
         // Build bridge deck
         for (int x = 0; x < length; x++) {
             for (int z = 0; z < width; z++) {
-                BlockPos pos = origin.add(x, 0, z);
-                originalStates.put(pos, world.getBlockState(pos));
-                world.setBlockState(pos, primaryBlock.getDefaultState());
+                plan.set(x, 0, z, primaryBlock.getDefaultState());
                 
                 // Add railings on sides
                 if (z == 0 || z == width - 1) {
-                    BlockPos railPos = origin.add(x, 1, z);
-                    originalStates.put(railPos, world.getBlockState(railPos));
-                    world.setBlockState(railPos, railBlock.getDefaultState());
+                    plan.set(x, 1, z, railBlock.getDefaultState());
                 }
             }
         }
     }
 
-    private static void buildFountainInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildFountainInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block block = config.getMaterial().getPrimaryBlock();
         float scale = config.getSize().getScale();
         
@@ -272,26 +316,22 @@ public class StructureBuilder {
         for (int x = -radius; x <= radius; x++) {
             for (int z = -radius; z <= radius; z++) {
                 if (x * x + z * z <= radius * radius) {
-                    BlockPos pos = origin.add(x, 0, z);
-                    originalStates.put(pos, world.getBlockState(pos));
-                    world.setBlockState(pos, block.getDefaultState());
+                    plan.set(x, 0, z, block.getDefaultState());
                 }
             }
         }
 
         // Build center pillar with water
         for (int y = 0; y <= height; y++) {
-            BlockPos pos = origin.up(y);
-            originalStates.put(pos, world.getBlockState(pos));
             if (y == height) {
-                world.setBlockState(pos, Blocks.WATER.getDefaultState());
+                plan.set(0, y, 0, Blocks.WATER.getDefaultState());
             } else {
-                world.setBlockState(pos, block.getDefaultState());
+                plan.set(0, y, 0, block.getDefaultState());
             }
         }
     }
 
-    private static void buildTreehouseInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildTreehouseInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block logBlock = Blocks.OAK_LOG;
         Block plankBlock = config.getMaterial().getPrimaryBlock();
         Block leavesBlock = Blocks.OAK_LEAVES;
@@ -302,17 +342,13 @@ public class StructureBuilder {
 
         // Build tree trunk
         for (int y = 0; y < trunkHeight; y++) {
-            BlockPos pos = origin.up(y);
-            originalStates.put(pos, world.getBlockState(pos));
-            world.setBlockState(pos, logBlock.getDefaultState());
+            plan.set(0, y, 0, logBlock.getDefaultState());
         }
 
         // Build platform
         for (int x = -houseSize / 2; x <= houseSize / 2; x++) {
             for (int z = -houseSize / 2; z <= houseSize / 2; z++) {
-                BlockPos pos = origin.add(x, trunkHeight, z);
-                originalStates.put(pos, world.getBlockState(pos));
-                world.setBlockState(pos, plankBlock.getDefaultState());
+                plan.set(x, trunkHeight, z, plankBlock.getDefaultState());
             }
         }
 
@@ -320,12 +356,9 @@ public class StructureBuilder {
         for (int x = -houseSize / 2; x <= houseSize / 2; x++) {
             for (int z = -houseSize / 2; z <= houseSize / 2; z++) {
                 for (int y = 1; y < 3; y++) {
-                    BlockPos pos = origin.add(x, trunkHeight + y, z);
-                    originalStates.put(pos, world.getBlockState(pos));
-                    
                     boolean wall = x == -houseSize / 2 || x == houseSize / 2 || z == -houseSize / 2 || z == houseSize / 2;
                     if (wall) {
-                        world.setBlockState(pos, plankBlock.getDefaultState());
+                        plan.set(x, trunkHeight + y, z, plankBlock.getDefaultState());
                     }
                 }
             }
@@ -336,16 +369,14 @@ public class StructureBuilder {
             for (int z = -2; z <= 2; z++) {
                 for (int y = 0; y < 2; y++) {
                     if (x * x + z * z <= 5) {
-                        BlockPos pos = origin.add(x, trunkHeight + 3 + y, z);
-                        originalStates.put(pos, world.getBlockState(pos));
-                        world.setBlockState(pos, leavesBlock.getDefaultState());
+                        plan.set(x, trunkHeight + 3 + y, z, leavesBlock.getDefaultState());
                     }
                 }
             }
         }
     }
 
-    private static void buildWallInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildWallInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block block = config.getMaterial().getPrimaryBlock();
         float scale = config.getSize().getScale();
         
@@ -354,14 +385,12 @@ public class StructureBuilder {
 
         for (int x = 0; x < length; x++) {
             for (int y = 0; y < height; y++) {
-                BlockPos pos = origin.add(x, y, 0);
-                originalStates.put(pos, world.getBlockState(pos));
-                world.setBlockState(pos, block.getDefaultState());
+                plan.set(x, y, 0, block.getDefaultState());
             }
         }
     }
 
-    private static void buildRoadInternal(World world, BlockPos origin, BuildConfig config, Map<BlockPos, BlockState> originalStates) {
+    private static void buildRoadInternal(BlockPlan.Builder plan, BuildConfig config) {
         Block block = config.getMaterial().getPrimaryBlock();
         float scale = config.getSize().getScale();
         
@@ -370,73 +399,92 @@ public class StructureBuilder {
 
         for (int x = 0; x < length; x++) {
             for (int z = 0; z < width; z++) {
-                BlockPos pos = origin.add(x, 0, z);
-                originalStates.put(pos, world.getBlockState(pos));
-                world.setBlockState(pos, block.getDefaultState());
+                plan.set(x, 0, z, block.getDefaultState());
             }
         }
     }
 
     /**
-     * Gets information about a specific build type.
+     * Returns the exact materials of a configuration, computed from its compiled plan.
+     * The result is cached per configuration; it has no target location or time estimate.
      */
-    public static BuildInfo getBuildInfo(BuildType buildType, BuildSize size) {
-        BuildInfo info;
-        switch (buildType) {
-            case HOUSE -> {
-                info = new BuildInfo(buildType, "A cozy house with walls, floor, and roof", 5);
-                info.addBlockRequirement("Primary Material", (int)(50 * size.getScale()));
-                info.addBlockRequirement("Roof Material", (int)(36 * size.getScale()));
-            }
-            case TOWER -> {
-                info = new BuildInfo(buildType, "A tall tower reaching to the sky", 3);
-                info.addBlockRequirement("Primary Material", (int)(10 * size.getScale()));
-            }
-            case MANSION -> {
-                info = new BuildInfo(buildType, "A large multi-floor mansion", 15);
-                info.addBlockRequirement("Primary Material", (int)(400 * size.getScale()));
-                info.addBlockRequirement("Secondary Material", (int)(150 * size.getScale()));
-                info.addBlockRequirement("Decorative Material", (int)(100 * size.getScale()));
-            }
-            case FARM -> {
-                info = new BuildInfo(buildType, "A fenced farm with farmland and water", 8);
-                info.addBlockRequirement("Fence", (int)(32 * size.getScale()));
-                info.addBlockRequirement("Farmland", (int)(36 * size.getScale()));
-                info.addBlockRequirement("Water", 1);
-            }
-            case CASTLE -> {
-                info = new BuildInfo(buildType, "A fortified castle with towers", 25);
-                info.addBlockRequirement("Primary Material", (int)(600 * size.getScale()));
-                info.addBlockRequirement("Tower Material", (int)(200 * size.getScale()));
-            }
-            case BRIDGE -> {
-                info = new BuildInfo(buildType, "A sturdy bridge with railings", 6);
-                info.addBlockRequirement("Primary Material", (int)(45 * size.getScale()));
-                info.addBlockRequirement("Railing Material", (int)(30 * size.getScale()));
-            }
-            case FOUNTAIN -> {
-                info = new BuildInfo(buildType, "A decorative fountain with water", 4);
-                info.addBlockRequirement("Primary Material", (int)(30 * size.getScale()));
-                info.addBlockRequirement("Water", 1);
-            }
-            case TREEHOUSE -> {
-                info = new BuildInfo(buildType, "A house built in a tree", 10);
-                info.addBlockRequirement("Wood Logs", (int)(8 * size.getScale()));
-                info.addBlockRequirement("Planks", (int)(40 * size.getScale()));
-                info.addBlockRequirement("Leaves", (int)(20 * size.getScale()));
-            }
-            case WALL -> {
-                info = new BuildInfo(buildType, "A defensive wall", 5);
-                info.addBlockRequirement("Primary Material", (int)(80 * size.getScale()));
-            }
-            case ROAD -> {
-                info = new BuildInfo(buildType, "A paved road", 4);
-                info.addBlockRequirement("Primary Material", (int)(60 * size.getScale()));
-            }
-            default -> {
-                info = new BuildInfo(buildType, "Custom structure", 10);
+    public static BuildInfo getBuildInfo(BuildConfig config) {
+        return BlockPlanCache.getInfo(BlockPlanCache.Key.of(config),
+                key -> BuildInfo.of(key.buildType(), getDescription(key.buildType()), getPlan(config)));
+    }
+
+    /**
+     * Returns the build info for a configuration built at the given origin: how many blocks
+     * there differ from the plan, and how long the build takes at the given throughput.
+     */
+    public static BuildInfo getBuildInfo(BuildConfig config, BlockView world, BlockPos origin, double blocksPerSecond) {
+        return getBuildInfo(config).withTarget(countChanged(getPlan(config), world, origin), blocksPerSecond);
+    }
+
+    /**
+     * Like {@link #getBuildInfo(BuildConfig, BlockView, BlockPos, double)}, but compiles the plan
+     * and its materials on the worker pool. Only the comparison with the world runs on
+     * {@code worldThread}, once the plan is ready, so a cache miss never stalls that thread.
+     */
+    public static CompletableFuture<BuildInfo> getBuildInfoAsync(BuildConfig config, BlockView world, BlockPos origin,
+                                                                 double blocksPerSecond, Executor worldThread) {
+        // The worker must not see later changes to the caller's config
+        BuildConfig snapshot = config.copy();
+        CompletableFuture<PlanInfo> compiled;
+        try {
+            compiled = CompletableFuture.supplyAsync(
+                    () -> new PlanInfo(getPlan(snapshot), getBuildInfo(snapshot)), PLAN_EXECUTOR);
+        } catch (RuntimeException e) {
+            // The pool's queue is full
+            return CompletableFuture.failedFuture(e);
+        }
+        return compiled.thenApplyAsync(result ->
+                result.info().withTarget(countChanged(result.plan(), world, origin), blocksPerSecond), worldThread);
+    }
+
+    private record PlanInfo(BlockPlan plan, BuildInfo info) {
+    }
+
+    private static int countChanged(BlockPlan plan, BlockView world, BlockPos origin) {
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        int changed = 0;
+        for (int i = 0; i < plan.size(); i++) {
+            long relative = plan.getPosition(i);
+            pos.set(origin.getX() + BlockPos.unpackLongX(relative),
+                    origin.getY() + BlockPos.unpackLongY(relative),
+                    origin.getZ() + BlockPos.unpackLongZ(relative));
+            if (world.getBlockState(pos) != plan.getState(i)) {
+                changed++;
             }
         }
-        return info;
+        return changed;
+    }
+
+    private static ExecutorService createPlanExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PLAN_THREADS, PLAN_THREADS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(PLAN_QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "BuilderUI Plan Worker #" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static String getDescription(BuildType buildType) {
+        return switch (buildType) {
+            case HOUSE -> "A cozy house with walls, floor, and roof";
+            case TOWER -> "A tall tower reaching to the sky";
+            case MANSION -> "A large multi-floor mansion";
+            case FARM -> "A fenced farm with farmland and water";
+            case CASTLE -> "A fortified castle with towers";
+            case BRIDGE -> "A sturdy bridge with railings";
+            case FOUNTAIN -> "A decorative fountain with water";
+            case TREEHOUSE -> "A house built in a tree";
+            case WALL -> "A defensive wall";
+            case ROAD -> "A paved road";
+            case CUSTOM -> "Custom structure";
+        };
     }
 }
@@ -1,100 +1,395 @@
 package dank.builderui.util;
 
-import net.minecraft.block.Block;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import net.minecraft.block.BlockState;
+import net.minecraft.state.property.Property;
 import net.minecraft.util.math.BlockPos;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Represents a template for a structure that can be built.
  * Contains relative block positions and their corresponding block states.
+ *
+ * Blocks are stored as palette ids inside the template volume. Sparse templates use an
+ * occupancy bitset plus packed ids; once at least half the volume is filled the template
+ * switches to a dense array with one cell per position. Use {@link #forEachBlock} to
+ * iterate without copying.
  */
 public class StructureTemplate {
     private final String name;
-    private final Map<BlockPos, BlockState> blocks;
     private final int width;
     private final int height;
     private final int depth;
-    
+    private final int volume;
+    private final List<BlockState> palette = new ArrayList<>();
+    private final Reference2IntOpenHashMap<BlockState> paletteIds = new Reference2IntOpenHashMap<>();
+    private TemplateStorage storage;
+    private boolean storageShared;
+
     public StructureTemplate(String name, int width, int height, int depth) {
+        if (width <= 0 || height <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Template dimensions must be positive");
+        }
+        if ((long) width * height * depth > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Template is too large: " + width + "x" + height + "x" + depth);
+        }
         this.name = name;
-        this.blocks = new HashMap<>();
         this.width = width;
         this.height = height;
         this.depth = depth;
+        this.volume = width * height * depth;
+        this.storage = new SparseTemplateStorage(volume);
+        paletteIds.defaultReturnValue(-1);
+    }
+
+    /**
+     * Creates a template that shares the source's block storage under a new palette.
+     * Both templates copy the storage on their next write.
+     */
+    private StructureTemplate(StructureTemplate source, List<BlockState> palette) {
+        this.name = source.name;
+        this.width = source.width;
+        this.height = source.height;
+        this.depth = source.depth;
+        this.volume = source.volume;
+        this.storage = source.storage;
+        this.storageShared = true;
+        source.storageShared = true;
+        paletteIds.defaultReturnValue(-1);
+        for (BlockState state : palette) {
+            // Remapped palettes can contain duplicates; new writes reuse the first id
+            paletteIds.putIfAbsent(state, this.palette.size());
+            this.palette.add(state);
+        }
     }
-    
+
+    /**
+     * Receives the blocks of a template.
+     */
+    @FunctionalInterface
+    public interface BlockVisitor {
+        void visit(int x, int y, int z, int stateId);
+    }
+
     /**
      * Adds a block to the template at the specified relative position.
+     * The position must lie inside the template's dimensions.
      */
     public void setBlock(int x, int y, int z, BlockState state) {
-        blocks.put(new BlockPos(x, y, z), state);
+        if (x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= depth) {
+            throw new IllegalArgumentException("Block at " + x + ", " + y + ", " + z + " is outside the template");
+        }
+        if (storageShared) {
+            storage = storage.copy();
+            storageShared = false;
+        }
+        storage.set(index(x, y, z), getOrCreateStateId(state));
+        // Counts pending out-of-order writes without merging them
+        if (storage instanceof SparseTemplateStorage sparse && sparse.size() * 2L >= volume) {
+            storage = toDense(sparse);
+        }
+    }
+
+    /**
+     * Returns the block at the position, or null if it is empty or outside the template.
+     */
+    public BlockState getBlockState(int x, int y, int z) {
+        if (x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= depth) {
+            return null;
+        }
+        int stateId = storage.get(index(x, y, z));
+        return stateId < 0 ? null : palette.get(stateId);
+    }
+
+    /**
+     * Visits every block in y, z, x order. Look states up with {@link #getState(int)}
+     * or index into {@link #getPalette()}.
+     */
+    public void forEachBlock(BlockVisitor visitor) {
+        int width = this.width;
+        int depth = this.depth;
+        storage.forEach((index, stateId) -> {
+            int x = index % width;
+            int z = (index / width) % depth;
+            int y = index / width / depth;
+            visitor.visit(x, y, z, stateId);
+        });
+    }
+
+    /**
+     * Returns the palette. Ids passed to {@link BlockVisitor}s index into this list.
+     */
+    public List<BlockState> getPalette() {
+        return Collections.unmodifiableList(palette);
     }
-    
+
+    public BlockState getState(int stateId) {
+        return palette.get(stateId);
+    }
+
     /**
      * Gets all blocks in the template.
+     * Builds a new map on every call; prefer {@link #forEachBlock} where possible.
      */
     public Map<BlockPos, BlockState> getBlocks() {
-        return new HashMap<>(blocks);
+        Map<BlockPos, BlockState> blocks = new HashMap<>();
+        forEachBlock((x, y, z, stateId) -> blocks.put(new BlockPos(x, y, z), palette.get(stateId)));
+        return blocks;
     }
-    
+
     /**
-     * Returns a copy of this template with all blocks replaced with the specified material.
+     * Returns a copy of this template built from the given material.
+     * Each block that belongs to a material is swapped for the block with the same role
+     * (primary, secondary or decorative) in the target material, keeping shared block
+     * state properties such as facing or axis. Other blocks are left alone.
+     *
+     * Only the palette is remapped; the block storage is shared until either template
+     * is modified, so this costs O(palette size) regardless of the template's size.
      */
     public StructureTemplate withMaterial(MaterialType material) {
-        StructureTemplate copy = new StructureTemplate(this.name, this.width, this.height, this.depth);
-        
-        for (Map.Entry<BlockPos, BlockState> entry : blocks.entrySet()) {
-            BlockPos pos = entry.getKey();
-            // Simple material replacement - in practice, this would be more sophisticated
-            Block newBlock = material.getPrimaryBlock();
-            copy.setBlock(pos.getX(), pos.getY(), pos.getZ(), newBlock.getDefaultState());
-        }
-        
-        return copy;
-    }
-    
+        List<BlockState> remapped = new ArrayList<>(palette.size());
+        for (BlockState state : palette) {
+            MaterialType.Role role = MaterialType.getRole(state.getBlock());
+            if (role == null) {
+                remapped.add(state);
+            } else {
+                remapped.add(copyProperties(state, material.getBlock(role).getDefaultState()));
+            }
+        }
+        return new StructureTemplate(this, remapped);
+    }
+
+    private static BlockState copyProperties(BlockState from, BlockState to) {
+        for (Property<?> property : from.getProperties()) {
+            if (to.contains(property)) {
+                to = copyProperty(from, to, property);
+            }
+        }
+        return to;
+    }
+
+    private static <T extends Comparable<T>> BlockState copyProperty(BlockState from, BlockState to, Property<T> property) {
+        return to.with(property, from.get(property));
+    }
+
     /**
      * Returns a scaled version of this template.
+     *
+     * Each destination block covers a box of source blocks. When scaling down, the box holds
+     * several blocks and the most common state wins, with ties going to blocks over air so thin
+     * walls survive; when scaling up, the box collapses to the nearest source block. Destination
+     * y-slabs are filled in parallel on the common fork-join pool.
      */
     public StructureTemplate withScale(float scale) {
         int newWidth = Math.max(1, (int)(width * scale));
         int newHeight = Math.max(1, (int)(height * scale));
         int newDepth = Math.max(1, (int)(depth * scale));
-        
-        StructureTemplate scaled = new StructureTemplate(this.name, newWidth, newHeight, newDepth);
-        
-        // Scale the blocks - this is a simplified version
-        for (Map.Entry<BlockPos, BlockState> entry : blocks.entrySet()) {
-            BlockPos pos = entry.getKey();
-            int newX = (int)(pos.getX() * scale);
-            int newY = (int)(pos.getY() * scale);
-            int newZ = (int)(pos.getZ() * scale);
-            scaled.setBlock(newX, newY, newZ, entry.getValue());
-        }
-        
-        return scaled;
-    }
-    
+        if (newWidth == width && newHeight == height && newDepth == depth) {
+            return new StructureTemplate(this, palette);
+        }
+        if ((long) newWidth * newHeight * newDepth > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Scaled template is too large");
+        }
+
+        storage.prepareForConcurrentReads();
+        short[] cells = new short[newWidth * newHeight * newDepth];
+        ResampleTask task = new ResampleTask(this, cells, newWidth, newHeight, newDepth, 0, newHeight);
+        ForkJoinPool.commonPool().invoke(task);
+
+        return withStorage(newWidth, newHeight, newDepth, DenseTemplateStorage.wrap(cells));
+    }
+
+    /**
+     * Returns a template with this palette, the given size and storage, switching to
+     * sparse storage if the blocks fill less than half the volume.
+     */
+    private StructureTemplate withStorage(int width, int height, int depth, DenseTemplateStorage dense) {
+        StructureTemplate result = new StructureTemplate(name, width, height, depth);
+        for (BlockState state : palette) {
+            result.paletteIds.putIfAbsent(state, result.palette.size());
+            result.palette.add(state);
+        }
+        if (dense.size() * 2L >= result.volume) {
+            result.storage = dense;
+        } else {
+            // Ascending writes are appended in place, so this is a single pass
+            dense.forEach(result.storage::set);
+        }
+        return result;
+    }
+
+    /**
+     * Fills destination y-slabs, splitting until each piece is small enough to run directly.
+     */
+    private static class ResampleTask extends RecursiveAction {
+        private static final int DIRECT_VOXELS = 32 * 1024;
+
+        private final StructureTemplate source;
+        private final short[] cells;
+        private final int width;
+        private final int height;
+        private final int depth;
+        private final int startY;
+        private final int endY;
+
+        ResampleTask(StructureTemplate source, short[] cells, int width, int height, int depth, int startY, int endY) {
+            this.source = source;
+            this.cells = cells;
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.startY = startY;
+            this.endY = endY;
+        }
+
+        @Override
+        protected void compute() {
+            if (endY - startY > 1 && (long) (endY - startY) * width * depth > DIRECT_VOXELS) {
+                int middle = (startY + endY) >>> 1;
+                invokeAll(new ResampleTask(source, cells, width, height, depth, startY, middle),
+                        new ResampleTask(source, cells, width, height, depth, middle, endY));
+                return;
+            }
+
+            int[] xStarts = new int[width], xEnds = new int[width];
+            int[] yStarts = new int[height], yEnds = new int[height];
+            int[] zStarts = new int[depth], zEnds = new int[depth];
+            mapAxis(source.width, width, xStarts, xEnds);
+            mapAxis(source.height, height, yStarts, yEnds);
+            mapAxis(source.depth, depth, zStarts, zEnds);
+
+            int[] counts = new int[source.palette.size()];
+            int[] touched = new int[counts.length];
+            for (int y = startY; y < endY; y++) {
+                for (int z = 0; z < depth; z++) {
+                    for (int x = 0; x < width; x++) {
+                        int best = vote(xStarts[x], xEnds[x], yStarts[y], yEnds[y], zStarts[z], zEnds[z],
+                                counts, touched);
+                        cells[(y * depth + z) * width + x] = (short) (best + 1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the most common palette id in the source box, or -1 if air wins.
+         */
+        private int vote(int x0, int x1, int y0, int y1, int z0, int z1, int[] counts, int[] touched) {
+            int empty = 0;
+            int distinct = 0;
+            for (int y = y0; y < y1; y++) {
+                for (int z = z0; z < z1; z++) {
+                    int row = (y * source.depth + z) * source.width;
+                    for (int x = x0; x < x1; x++) {
+                        int stateId = source.storage.get(row + x);
+                        if (stateId < 0) {
+                            empty++;
+                        } else if (counts[stateId]++ == 0) {
+                            touched[distinct++] = stateId;
+                        }
+                    }
+                }
+            }
+
+            int best = -1;
+            int bestCount = 0;
+            for (int i = 0; i < distinct; i++) {
+                int stateId = touched[i];
+                if (counts[stateId] > bestCount) {
+                    best = stateId;
+                    bestCount = counts[stateId];
+                }
+                counts[stateId] = 0;
+            }
+            return bestCount >= empty ? best : -1;
+        }
+
+        /**
+         * Maps each destination coordinate to the half-open range of source coordinates it covers.
+         * Ranges narrower than one block fall back to the source block nearest the destination center.
+         */
+        private static void mapAxis(int sourceLength, int length, int[] starts, int[] ends) {
+            for (int i = 0; i < length; i++) {
+                int start = (int) ((long) i * sourceLength / length);
+                int end = (int) ((long) (i + 1) * sourceLength / length);
+                if (end <= start) {
+                    start = (int) ((2L * i + 1) * sourceLength / (2L * length));
+                    end = start + 1;
+                }
+                starts[i] = start;
+                ends[i] = end;
+            }
+        }
+    }
+
     public String getName() {
         return name;
     }
-    
+
     public int getWidth() {
         return width;
     }
-    
+
     public int getHeight() {
         return height;
     }
-    
+
     public int getDepth() {
         return depth;
     }
-    
+
     public int getBlockCount() {
-        return blocks.size();
+        return storage.size();
+    }
+
+    /**
+     * Approximate heap used by the block storage, in bytes.
+     */
+    public long getMemoryBytes() {
+        return storage.getMemoryBytes() + 8L * palette.size();
+    }
+
+    /**
+     * Returns true once the template has switched to dense storage.
+     */
+    public boolean isDense() {
+        return storage instanceof DenseTemplateStorage;
+    }
+
+    /**
+     * Folds pending writes so other threads can read this template while nobody writes to it.
+     */
+    void prepareForConcurrentReads() {
+        storage.prepareForConcurrentReads();
+    }
+
+    private int index(int x, int y, int z) {
+        return (y * depth + z) * width + x;
+    }
+
+    private int getOrCreateStateId(BlockState state) {
+        int stateId = paletteIds.getInt(state);
+        if (stateId < 0) {
+            stateId = palette.size();
+            if (stateId > TemplateStorage.MAX_STATE_ID) {
+                throw new IllegalStateException("Template " + name + " has too many distinct block states");
+            }
+            palette.add(state);
+            paletteIds.put(state, stateId);
+        }
+        return stateId;
+    }
+
+    private DenseTemplateStorage toDense(TemplateStorage source) {
+        DenseTemplateStorage dense = new DenseTemplateStorage(volume);
+        source.forEach(dense::set);
+        return dense;
     }
 }
@@ -0,0 +1,63 @@
+package dank.builderui.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of loaded templates, bounded by their approximate heap size rather than their count.
+ * A template larger than the whole budget is not cached at all.
+ */
+public class TemplateCache {
+    private final Map<String, StructureTemplate> templates = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> weights = new HashMap<>();
+    private long totalBytes;
+
+    public synchronized StructureTemplate get(String key) {
+        return templates.get(key);
+    }
+
+    public synchronized void put(String key, StructureTemplate template) {
+        invalidate(key);
+        long weight = template.getMemoryBytes();
+        long maxBytes = getMaxBytes();
+        if (weight > maxBytes) {
+            return;
+        }
+
+        templates.put(key, template);
+        weights.put(key, weight);
+        totalBytes += weight;
+
+        Iterator<Map.Entry<String, StructureTemplate>> eldest = templates.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            String eldestKey = eldest.next().getKey();
+            eldest.remove();
+            totalBytes -= weights.remove(eldestKey);
+        }
+    }
+
+    public synchronized void invalidate(String key) {
+        if (templates.remove(key) != null) {
+            totalBytes -= weights.remove(key);
+        }
+    }
+
+    public synchronized void clear() {
+        templates.clear();
+        weights.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Approximate heap used by the cached templates, in bytes.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private static long getMaxBytes() {
+        return BuilderUISettings.get().getTemplateCacheMegabytes() * 1024L * 1024L;
+    }
+}
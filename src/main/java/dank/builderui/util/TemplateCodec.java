@@ -0,0 +1,335 @@
+package dank.builderui.util;
+
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import dank.builderui.BuilderUIMod;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.block.BlockState;
+import net.minecraft.command.argument.BlockArgumentParser;
+import net.minecraft.registry.Registries;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Binary format for saved structure templates ({@code .btpl}).
+ *
+ * <pre>
+ * header:  magic "BTPL", version byte, flags byte (bit 0: body is deflated)
+ * body:    name (UTF), width, height, depth, block count (varints)
+ *          per block: zigzag varint delta of the linear index (y, z, x order),
+ *                     varint palette id; an id equal to the palette size
+ *                     introduces a new entry, followed by the state string
+ * </pre>
+ *
+ * Palette entries are written inline the first time they are used, so both the
+ * {@link Writer} and the {@link Reader} stream blocks without buffering the template.
+ * Blocks written in index order cost two or three bytes each before compression.
+ */
+public class TemplateCodec {
+    public static final String EXTENSION = ".btpl";
+
+    private static final int MAGIC = 0x4254504C; // "BTPL"
+    private static final int VERSION = 1;
+    private static final int FLAG_DEFLATE = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Receives blocks as they are read.
+     */
+    @FunctionalInterface
+    public interface BlockSink {
+        void accept(int x, int y, int z, BlockState state);
+    }
+
+    /**
+     * Writes a whole template. Blocks come out of the template in index order,
+     * so every delta is small.
+     */
+    public static void write(StructureTemplate template, OutputStream out, boolean compress) throws IOException {
+        try (Writer writer = new Writer(out, template.getName(), template.getWidth(), template.getHeight(),
+                template.getDepth(), template.getBlockCount(), compress)) {
+            List<BlockState> palette = template.getPalette();
+            try {
+                template.forEachBlock((x, y, z, stateId) -> {
+                    try {
+                        writer.write(x, y, z, palette.get(stateId));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Reads a whole template.
+     */
+    public static StructureTemplate read(InputStream in) throws IOException {
+        try (Reader reader = new Reader(in)) {
+            StructureTemplate template = new StructureTemplate(reader.getName(), reader.getWidth(),
+                    reader.getHeight(), reader.getDepth());
+            reader.readBlocks(template::setBlock);
+            return template;
+        }
+    }
+
+    /**
+     * Streams blocks into the binary format. The header, including the block count,
+     * is written up front, so the caller must know how many blocks it will write.
+     */
+    public static class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private final int width;
+        private final int height;
+        private final int depth;
+        private final int blockCount;
+        private final Deflater deflater;
+        private final Reference2IntOpenHashMap<BlockState> paletteIds = new Reference2IntOpenHashMap<>();
+        private long previousIndex;
+        private int written;
+
+        public Writer(OutputStream target, String name, int width, int height, int depth, int blockCount,
+                      boolean compress) throws IOException {
+            if (width <= 0 || height <= 0 || depth <= 0) {
+                throw new IllegalArgumentException("Template dimensions must be positive");
+            }
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.blockCount = blockCount;
+            paletteIds.defaultReturnValue(-1);
+
+            DataOutputStream header = new DataOutputStream(target);
+            header.writeInt(MAGIC);
+            header.writeByte(VERSION);
+            header.writeByte(compress ? FLAG_DEFLATE : 0);
+
+            OutputStream body = target;
+            if (compress) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+                body = new DeflaterOutputStream(target, deflater, BUFFER_SIZE);
+            } else {
+                deflater = null;
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(body, BUFFER_SIZE));
+            out.writeUTF(name);
+            writeVarInt(out, width);
+            writeVarInt(out, height);
+            writeVarInt(out, depth);
+            writeVarInt(out, blockCount);
+        }
+
+        public void write(int x, int y, int z, BlockState state) throws IOException {
+            if (x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= depth) {
+                throw new IllegalArgumentException("Block at " + x + ", " + y + ", " + z + " is outside the template");
+            }
+            if (written == blockCount) {
+                throw new IllegalStateException("More blocks written than declared (" + blockCount + ")");
+            }
+            long index = ((long) y * depth + z) * width + x;
+            writeVarLong(out, zigzag(index - previousIndex));
+            previousIndex = index;
+
+            int id = paletteIds.getInt(state);
+            if (id < 0) {
+                int newId = paletteIds.size();
+                paletteIds.put(state, newId);
+                writeVarInt(out, newId);
+                out.writeUTF(BlockArgumentParser.stringifyBlockState(state));
+            } else {
+                writeVarInt(out, id);
+            }
+            written++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+            if (written != blockCount) {
+                throw new IllegalStateException("Declared " + blockCount + " blocks but wrote " + written);
+            }
+        }
+    }
+
+    /**
+     * Streams blocks out of the binary format. The header is read on construction.
+     */
+    public static class Reader implements AutoCloseable {
+        private final DataInputStream in;
+        private final Inflater inflater;
+        private final String name;
+        private final int width;
+        private final int height;
+        private final int depth;
+        private final int blockCount;
+
+        public Reader(InputStream source) throws IOException {
+            DataInputStream header = new DataInputStream(source);
+            if (header.readInt() != MAGIC) {
+                throw new IOException("Not a BuilderUI template");
+            }
+            int version = header.readUnsignedByte();
+            if (version > VERSION) {
+                throw new IOException("Unsupported template version " + version);
+            }
+            int flags = header.readUnsignedByte();
+
+            InputStream body = source;
+            if ((flags & FLAG_DEFLATE) != 0) {
+                inflater = new Inflater();
+                body = new InflaterInputStream(source, inflater, BUFFER_SIZE);
+            } else {
+                inflater = null;
+            }
+            this.in = new DataInputStream(new BufferedInputStream(body, BUFFER_SIZE));
+            this.name = in.readUTF();
+            this.width = readVarInt(in);
+            this.height = readVarInt(in);
+            this.depth = readVarInt(in);
+            this.blockCount = readVarInt(in);
+            if (width <= 0 || height <= 0 || depth <= 0 || blockCount < 0
+                    || (long) width * height * depth < blockCount) {
+                throw new IOException("Corrupt template header");
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getBlockCount() {
+            return blockCount;
+        }
+
+        /**
+         * Reads every block and hands it to the sink. Blocks whose state no longer
+         * exists, e.g. from a removed mod, are skipped.
+         */
+        public void readBlocks(BlockSink sink) throws IOException {
+            List<BlockState> palette = new ArrayList<>();
+            long volume = (long) width * height * depth;
+            long index = 0;
+            for (int i = 0; i < blockCount; i++) {
+                index += unzigzag(readVarLong(in));
+                if (index < 0 || index >= volume) {
+                    throw new IOException("Corrupt template: block index " + index + " out of range");
+                }
+
+                int id = readVarInt(in);
+                if (id == palette.size()) {
+                    palette.add(parseState(in.readUTF()));
+                } else if (id < 0 || id > palette.size()) {
+                    throw new IOException("Corrupt template: palette id " + id + " out of range");
+                }
+
+                BlockState state = palette.get(id);
+                if (state != null) {
+                    int x = (int) (index % width);
+                    int z = (int) ((index / width) % depth);
+                    int y = (int) (index / width / depth);
+                    sink.accept(x, y, z, state);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+    }
+
+    static BlockState parseState(String string) {
+        try {
+            return BlockArgumentParser.block(Registries.BLOCK.getReadOnlyWrapper(), string, false).blockState();
+        } catch (CommandSyntaxException e) {
+            BuilderUIMod.LOGGER.warn("Skipping unknown block state '{}' in template: {}", string, e.getMessage());
+            return null;
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt is too long");
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarLong is too long");
+    }
+}
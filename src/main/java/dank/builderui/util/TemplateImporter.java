@@ -0,0 +1,409 @@
+package dank.builderui.util;
+
+import dank.builderui.BuilderUIMod;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.registry.Registries;
+import net.minecraft.state.StateManager;
+import net.minecraft.state.property.Property;
+import net.minecraft.util.Identifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports structures made with other tools into {@link StructureTemplate}s.
+ *
+ * Supported are vanilla structure files ({@code .nbt}, as saved by structure blocks) and
+ * Sponge schematics ({@code .schem}, versions 2 and 3). Both are read with an
+ * {@link NbtStreamReader}, so blocks go straight into the template's storage without a tag
+ * tree. NBT does not fix the order of compound entries, though: if the blocks come before
+ * the palette or the dimensions, they are held back in a compact buffer until those arrive.
+ *
+ * Air and structure voids are skipped, and block entity data, entities and biomes are not
+ * imported. States are read as written; files from older game versions are not upgraded.
+ */
+public class TemplateImporter {
+    public static final String STRUCTURE_EXTENSION = ".nbt";
+    public static final String SCHEMATIC_EXTENSION = ".schem";
+
+    /**
+     * Returns true if the file has an extension this importer understands.
+     */
+    public static boolean canImport(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(STRUCTURE_EXTENSION) || name.endsWith(SCHEMATIC_EXTENSION);
+    }
+
+    /**
+     * Imports a structure or schematic file, choosing the format by its extension.
+     */
+    public static StructureTemplate importFile(Path file, String name) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            if (file.getFileName().toString().endsWith(SCHEMATIC_EXTENSION)) {
+                return readSchematic(in, name);
+            }
+            if (file.getFileName().toString().endsWith(STRUCTURE_EXTENSION)) {
+                return readStructure(in, name);
+            }
+            throw new IOException("Unsupported structure format: " + file.getFileName());
+        }
+    }
+
+    /**
+     * Reads a vanilla structure file: {@code size}, {@code palette} (or the first of
+     * {@code palettes}) and a {@code blocks} list of positions and palette ids.
+     */
+    public static StructureTemplate readStructure(InputStream source, String name) throws IOException {
+        try (NbtStreamReader reader = new NbtStreamReader(source)) {
+            if (reader.readRoot() != NbtStreamReader.COMPOUND) {
+                throw new IOException("Structure file does not start with a compound");
+            }
+            StructureImport structure = new StructureImport(name);
+            int type;
+            while ((type = reader.nextEntry()) != NbtStreamReader.END) {
+                switch (reader.getName()) {
+                    case "size" -> structure.readSize(reader, type);
+                    case "palette" -> structure.readPalette(reader, type);
+                    case "palettes" -> structure.readPalettes(reader, type);
+                    case "blocks" -> structure.readBlocks(reader, type);
+                    default -> reader.skip(type);
+                }
+            }
+            return structure.finish();
+        }
+    }
+
+    /**
+     * Reads a Sponge schematic. Version 2 keeps {@code Palette} and {@code BlockData} in the
+     * root compound; version 3 wraps everything in a {@code Schematic} compound and moves them
+     * to {@code Blocks.Palette} and {@code Blocks.Data}.
+     */
+    public static StructureTemplate readSchematic(InputStream source, String name) throws IOException {
+        try (NbtStreamReader reader = new NbtStreamReader(source)) {
+            if (reader.readRoot() != NbtStreamReader.COMPOUND) {
+                throw new IOException("Schematic does not start with a compound");
+            }
+            SchematicImport schematic = new SchematicImport(name);
+            schematic.readCompound(reader);
+            return schematic.finish();
+        }
+    }
+
+    private static class StructureImport {
+        private final String name;
+        private int[] size;
+        private List<BlockState> palette;
+        private StructureTemplate template;
+        // x, y, z, palette id of blocks read before the size or the palette
+        private IntArrayList pending;
+
+        StructureImport(String name) {
+            this.name = name;
+        }
+
+        void readSize(NbtStreamReader reader, int type) throws IOException {
+            if (type != NbtStreamReader.LIST || reader.readListHeader() != 3
+                    || reader.getListType() != NbtStreamReader.INT) {
+                throw new IOException("Structure size must be a list of three ints");
+            }
+            size = new int[]{Math.max(1, reader.readInt()), Math.max(1, reader.readInt()), Math.max(1, reader.readInt())};
+        }
+
+        void readPalette(NbtStreamReader reader, int type) throws IOException {
+            expectList(type, "palette");
+            int length = reader.readListHeader();
+            if (length > 0 && reader.getListType() != NbtStreamReader.COMPOUND) {
+                throw new IOException("Structure palette must be a list of compounds");
+            }
+            List<BlockState> states = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                states.add(readPaletteEntry(reader));
+            }
+            palette = states;
+        }
+
+        /**
+         * Structures with random variants hold several palettes; the first one is used.
+         */
+        void readPalettes(NbtStreamReader reader, int type) throws IOException {
+            expectList(type, "palettes");
+            int length = reader.readListHeader();
+            for (int i = 0; i < length; i++) {
+                if (i == 0 && palette == null) {
+                    readPalette(reader, NbtStreamReader.LIST);
+                } else {
+                    reader.skip(NbtStreamReader.LIST);
+                }
+            }
+        }
+
+        void readBlocks(NbtStreamReader reader, int type) throws IOException {
+            expectList(type, "blocks");
+            int length = reader.readListHeader();
+            if (length > 0 && reader.getListType() != NbtStreamReader.COMPOUND) {
+                throw new IOException("Structure blocks must be a list of compounds");
+            }
+            for (int i = 0; i < length; i++) {
+                int x = 0, y = 0, z = 0, stateId = -1;
+                int entryType;
+                while ((entryType = reader.nextEntry()) != NbtStreamReader.END) {
+                    if (reader.getName().equals("pos") && entryType == NbtStreamReader.LIST) {
+                        if (reader.readListHeader() != 3 || reader.getListType() != NbtStreamReader.INT) {
+                            throw new IOException("Block position must be a list of three ints");
+                        }
+                        x = reader.readInt();
+                        y = reader.readInt();
+                        z = reader.readInt();
+                    } else if (reader.getName().equals("state") && entryType == NbtStreamReader.INT) {
+                        stateId = reader.readInt();
+                    } else {
+                        reader.skip(entryType);
+                    }
+                }
+                if (stateId < 0) {
+                    throw new IOException("Block without a state in structure");
+                }
+                place(x, y, z, stateId);
+            }
+        }
+
+        private void place(int x, int y, int z, int stateId) throws IOException {
+            if (template == null && size != null && palette != null) {
+                template = new StructureTemplate(name, size[0], size[1], size[2]);
+            }
+            if (template == null) {
+                if (pending == null) {
+                    pending = new IntArrayList();
+                }
+                pending.add(x);
+                pending.add(y);
+                pending.add(z);
+                pending.add(stateId);
+                return;
+            }
+            if (stateId >= palette.size()) {
+                throw new IOException("Block state " + stateId + " is not in the structure palette");
+            }
+            BlockState state = palette.get(stateId);
+            if (state != null && !skipState(state)) {
+                setBlock(template, x, y, z, state);
+            }
+        }
+
+        StructureTemplate finish() throws IOException {
+            if (size == null) {
+                throw new IOException("Structure has no size");
+            }
+            if (palette == null) {
+                palette = List.of();
+            }
+            if (template == null) {
+                template = new StructureTemplate(name, size[0], size[1], size[2]);
+            }
+            if (pending != null) {
+                int[] blocks = pending.elements();
+                int count = pending.size();
+                pending = null;
+                for (int i = 0; i < count; i += 4) {
+                    place(blocks[i], blocks[i + 1], blocks[i + 2], blocks[i + 3]);
+                }
+            }
+            return template;
+        }
+    }
+
+    private static class SchematicImport {
+        private final String name;
+        private int width;
+        private int height;
+        private int length;
+        private Int2ObjectOpenHashMap<BlockState> palette;
+        private StructureTemplate template;
+        // Raw block data read before the dimensions or the palette
+        private byte[] pendingData;
+
+        SchematicImport(String name) {
+            this.name = name;
+        }
+
+        void readCompound(NbtStreamReader reader) throws IOException {
+            int type;
+            while ((type = reader.nextEntry()) != NbtStreamReader.END) {
+                String key = reader.getName();
+                if ((key.equals("Schematic") || key.equals("Blocks")) && type == NbtStreamReader.COMPOUND) {
+                    readCompound(reader);
+                } else if (key.equals("Width") && type == NbtStreamReader.SHORT) {
+                    width = reader.readShort() & 0xFFFF;
+                } else if (key.equals("Height") && type == NbtStreamReader.SHORT) {
+                    height = reader.readShort() & 0xFFFF;
+                } else if (key.equals("Length") && type == NbtStreamReader.SHORT) {
+                    length = reader.readShort() & 0xFFFF;
+                } else if (key.equals("Palette") && type == NbtStreamReader.COMPOUND) {
+                    readPalette(reader);
+                } else if ((key.equals("BlockData") || key.equals("Data")) && type == NbtStreamReader.BYTE_ARRAY) {
+                    readData(reader);
+                } else {
+                    reader.skip(type);
+                }
+            }
+        }
+
+        private void readPalette(NbtStreamReader reader) throws IOException {
+            Int2ObjectOpenHashMap<BlockState> states = new Int2ObjectOpenHashMap<>();
+            int type;
+            while ((type = reader.nextEntry()) != NbtStreamReader.END) {
+                if (type != NbtStreamReader.INT) {
+                    throw new IOException("Schematic palette ids must be ints");
+                }
+                String stateString = reader.getName();
+                int id = reader.readInt();
+                BlockState state = TemplateCodec.parseState(stateString);
+                if (state != null && !skipState(state)) {
+                    states.put(id, state);
+                }
+            }
+            palette = states;
+        }
+
+        private void readData(NbtStreamReader reader) throws IOException {
+            int byteCount = reader.readArrayLength();
+            if (palette != null && hasDimensions()) {
+                decode(reader.input(), byteCount, createTemplate());
+            } else {
+                pendingData = reader.input().readNBytes(byteCount);
+                if (pendingData.length != byteCount) {
+                    throw new IOException("Schematic block data is truncated");
+                }
+            }
+        }
+
+        private boolean hasDimensions() {
+            return width > 0 && height > 0 && length > 0;
+        }
+
+        private StructureTemplate createTemplate() {
+            if (template == null) {
+                template = new StructureTemplate(name, width, height, length);
+            }
+            return template;
+        }
+
+        /**
+         * Decodes the varint palette ids, in x, z, y order, straight from the stream.
+         */
+        private void decode(DataInputStream in, int byteCount, StructureTemplate template) throws IOException {
+            int remaining = byteCount;
+            int layer = width * length;
+            int index = 0;
+            while (remaining > 0) {
+                int id = 0;
+                int shift = 0;
+                int b;
+                do {
+                    if (remaining-- == 0 || shift > 28) {
+                        throw new IOException("Malformed schematic block data");
+                    }
+                    b = in.readUnsignedByte();
+                    id |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+
+                BlockState state = palette.get(id);
+                if (state != null) {
+                    int y = index / layer;
+                    int rest = index - y * layer;
+                    setBlock(template, rest % width, y, rest / width, state);
+                }
+                index++;
+            }
+        }
+
+        StructureTemplate finish() throws IOException {
+            if (!hasDimensions()) {
+                throw new IOException("Schematic has no dimensions");
+            }
+            if (pendingData != null) {
+                if (palette == null) {
+                    throw new IOException("Schematic has no block palette");
+                }
+                byte[] data = pendingData;
+                pendingData = null;
+                decode(new DataInputStream(new ByteArrayInputStream(data)), data.length, createTemplate());
+            }
+            return createTemplate();
+        }
+    }
+
+    private static void expectList(int type, String key) throws IOException {
+        if (type != NbtStreamReader.LIST) {
+            throw new IOException("Structure " + key + " must be a list");
+        }
+    }
+
+    private static BlockState readPaletteEntry(NbtStreamReader reader) throws IOException {
+        String blockName = null;
+        List<String> properties = null;
+        int type;
+        while ((type = reader.nextEntry()) != NbtStreamReader.END) {
+            if (reader.getName().equals("Name") && type == NbtStreamReader.STRING) {
+                blockName = reader.readString();
+            } else if (reader.getName().equals("Properties") && type == NbtStreamReader.COMPOUND) {
+                properties = new ArrayList<>();
+                int propertyType;
+                while ((propertyType = reader.nextEntry()) != NbtStreamReader.END) {
+                    if (propertyType == NbtStreamReader.STRING) {
+                        properties.add(reader.getName());
+                        properties.add(reader.readString());
+                    } else {
+                        reader.skip(propertyType);
+                    }
+                }
+            } else {
+                reader.skip(type);
+            }
+        }
+
+        Identifier id = blockName != null ? Identifier.tryParse(blockName) : null;
+        Block block = id != null ? Registries.BLOCK.getOrEmpty(id).orElse(null) : null;
+        if (block == null) {
+            BuilderUIMod.LOGGER.warn("Skipping unknown block '{}' in imported structure", blockName);
+            return null;
+        }
+        BlockState state = block.getDefaultState();
+        if (properties != null) {
+            StateManager<Block, BlockState> stateManager = block.getStateManager();
+            for (int i = 0; i < properties.size(); i += 2) {
+                Property<?> property = stateManager.getProperty(properties.get(i));
+                if (property != null) {
+                    state = withParsedValue(state, property, properties.get(i + 1));
+                }
+            }
+        }
+        return state;
+    }
+
+    private static <T extends Comparable<T>> BlockState withParsedValue(BlockState state, Property<T> property, String value) {
+        return property.parse(value).map(parsed -> state.with(property, parsed)).orElse(state);
+    }
+
+    private static boolean skipState(BlockState state) {
+        return state.isAir() || state.isOf(Blocks.STRUCTURE_VOID);
+    }
+
+    private static void setBlock(StructureTemplate template, int x, int y, int z, BlockState state) throws IOException {
+        if (x < 0 || y < 0 || z < 0 || x >= template.getWidth() || y >= template.getHeight() || z >= template.getDepth()) {
+            throw new IOException("Block at " + x + ", " + y + ", " + z + " is outside the structure");
+        }
+        template.setBlock(x, y, z, state);
+    }
+}
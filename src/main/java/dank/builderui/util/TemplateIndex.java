@@ -0,0 +1,260 @@
+package dank.builderui.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import dank.builderui.BuilderUIMod;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Persistent manifest of the templates in a structures directory.
+ *
+ * Each template file has an entry with its name, dimensions, block count, CRC32 hash,
+ * modification time and size, stored in {@value #INDEX_FILE} next to the templates.
+ * On startup only files whose time or size changed are read again, and a
+ * {@link WatchService} keeps the index current while the game runs, so listing
+ * templates never touches the disk.
+ */
+public class TemplateIndex {
+    public static final String INDEX_FILE = "templates.index";
+    private static final String LEGACY_EXTENSION = ".json";
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Metadata of one template file.
+     */
+    public record Entry(String name, int width, int height, int depth, int blockCount, long hash,
+                        long modifiedTime, long fileSize) {
+    }
+
+    private final Path directory;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean dirty;
+
+    private TemplateIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the index for a directory and brings it up to date with the files on disk.
+     */
+    public static TemplateIndex open(Path directory) {
+        TemplateIndex index = new TemplateIndex(directory);
+        index.read();
+        index.rescan();
+        return index;
+    }
+
+    /**
+     * Returns the template names in the index, sorted.
+     */
+    public synchronized List<String> getNames() {
+        Set<String> names = new TreeSet<>();
+        for (String fileName : entries.keySet()) {
+            names.add(baseName(fileName));
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Returns the entry for a template file name without extension, or null if there is none.
+     * Binary templates win over legacy JSON ones.
+     */
+    public synchronized Entry get(String name) {
+        Entry entry = entries.get(name + TemplateCodec.EXTENSION);
+        return entry != null ? entry : entries.get(name + LEGACY_EXTENSION);
+    }
+
+    /**
+     * Re-reads every template file whose time or size changed and drops entries for deleted files.
+     */
+    public synchronized void rescan() {
+        Set<String> seen = new HashSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (isTemplateFile(file)) {
+                    seen.add(file.getFileName().toString());
+                    refreshEntry(file);
+                }
+            }
+        } catch (IOException e) {
+            BuilderUIMod.LOGGER.error("Failed to scan structures in {}", directory, e);
+            return;
+        }
+        if (entries.keySet().retainAll(seen)) {
+            dirty = true;
+        }
+        save();
+    }
+
+    /**
+     * Updates the entry for one file. Returns true if the file was added, changed or removed.
+     */
+    public synchronized boolean refresh(Path file) {
+        boolean changed = refreshEntry(file);
+        save();
+        return changed;
+    }
+
+    private boolean refreshEntry(Path file) {
+        String fileName = file.getFileName().toString();
+        Entry previous = entries.get(fileName);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // The file is gone
+            if (previous != null) {
+                entries.remove(fileName);
+                dirty = true;
+                return true;
+            }
+            return false;
+        }
+
+        long modifiedTime = attributes.lastModifiedTime().toMillis();
+        if (previous != null && previous.modifiedTime() == modifiedTime && previous.fileSize() == attributes.size()) {
+            return false;
+        }
+        try {
+            entries.put(fileName, readEntry(file, modifiedTime, attributes.size()));
+        } catch (IOException | RuntimeException e) {
+            BuilderUIMod.LOGGER.warn("Failed to index structure {}: {}", fileName, e.getMessage());
+            entries.remove(fileName);
+        }
+        dirty = true;
+        return true;
+    }
+
+    private static Entry readEntry(Path file, long modifiedTime, long fileSize) throws IOException {
+        try (CheckedInputStream in = new CheckedInputStream(Files.newInputStream(file), new CRC32())) {
+            if (file.getFileName().toString().endsWith(LEGACY_EXTENSION)) {
+                JsonObject data = GSON.fromJson(new String(in.readAllBytes(), StandardCharsets.UTF_8), JsonObject.class);
+                return new Entry(data.get("name").getAsString(), data.get("width").getAsInt(),
+                        data.get("height").getAsInt(), data.get("depth").getAsInt(),
+                        data.get("blockCount").getAsInt(), in.getChecksum().getValue(), modifiedTime, fileSize);
+            }
+
+            // Only the header is decoded; the rest of the file just runs through the checksum
+            try (TemplateCodec.Reader reader = new TemplateCodec.Reader(in)) {
+                in.transferTo(OutputStream.nullOutputStream());
+                return new Entry(reader.getName(), reader.getWidth(), reader.getHeight(), reader.getDepth(),
+                        reader.getBlockCount(), in.getChecksum().getValue(), modifiedTime, fileSize);
+            }
+        }
+    }
+
+    /**
+     * Starts a daemon thread that refreshes entries as files change and reports the
+     * name (without extension) of every template that was added, changed or removed.
+     */
+    public void startWatching(Consumer<String> onChange) {
+        WatchService watcher;
+        try {
+            watcher = directory.getFileSystem().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            BuilderUIMod.LOGGER.warn("Cannot watch {} for changes; edits need a restart to show up", directory, e);
+            return;
+        }
+
+        Thread thread = new Thread(() -> watch(watcher, onChange), "BuilderUI Template Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch(WatchService watcher, Consumer<String> onChange) {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost, so compare everything
+                        Set<String> before = new HashSet<>(getNames());
+                        rescan();
+                        before.addAll(getNames());
+                        before.forEach(onChange);
+                        continue;
+                    }
+                    Path file = directory.resolve((Path) event.context());
+                    if (isTemplateFile(file) && refresh(file)) {
+                        onChange.accept(baseName(file.getFileName().toString()));
+                    }
+                }
+                if (!key.reset()) {
+                    BuilderUIMod.LOGGER.warn("Stopped watching {}", directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    private void read() {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(indexFile)) {
+            Map<String, Entry> loaded = GSON.fromJson(new String(in.readAllBytes(), StandardCharsets.UTF_8),
+                    new TypeToken<Map<String, Entry>>() {}.getType());
+            if (loaded != null) {
+                entries.putAll(loaded);
+            }
+        } catch (IOException | JsonParseException e) {
+            BuilderUIMod.LOGGER.warn("Rebuilding structure index: {}", e.getMessage());
+        }
+    }
+
+    private void save() {
+        if (!dirty) {
+            return;
+        }
+        Path indexFile = directory.resolve(INDEX_FILE);
+        try {
+            Path tempFile = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+            Files.writeString(tempFile, GSON.toJson(entries));
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            BuilderUIMod.LOGGER.error("Failed to save structure index {}", indexFile, e);
+        }
+    }
+
+    private static boolean isTemplateFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(TemplateCodec.EXTENSION) || name.endsWith(LEGACY_EXTENSION);
+    }
+
+    private static String baseName(String fileName) {
+        return fileName.substring(0, fileName.lastIndexOf('.'));
+    }
+}
@@ -0,0 +1,247 @@
+package dank.builderui.util;
+
+import dank.builderui.BuilderUIMod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only archive of many templates in one file ({@code .btpk}).
+ *
+ * <pre>
+ * header:  magic "BTPK", version byte, entry count
+ * table:   per entry: name (UTF), width, height, depth, block count, CRC32 of the blob,
+ *          blob offset (long), blob length
+ * blobs:   one deflated {@link TemplateCodec} stream per entry
+ * </pre>
+ *
+ * Packs are memory-mapped when opened. The table is parsed once; templates are decoded
+ * straight from the mapped pages on demand, so a pack of hundreds of templates costs one
+ * open and no reads until a template is used. Each blob is checked against its CRC32 before
+ * it is decoded, so a corrupt or truncated pack fails per entry instead of decoding garbage.
+ */
+public class TemplatePack {
+    public static final String EXTENSION = ".btpk";
+
+    private static final int MAGIC = 0x4254504B; // "BTPK"
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Slot> slots;
+    private final long modifiedTime;
+
+    private record Slot(TemplateIndex.Entry entry, long offset, int length, long crc) {
+    }
+
+    private TemplatePack(Path path, MappedByteBuffer buffer, Map<String, Slot> slots, long modifiedTime) {
+        this.path = path;
+        this.buffer = buffer;
+        this.slots = slots;
+        this.modifiedTime = modifiedTime;
+    }
+
+    /**
+     * Maps a pack file and reads its table.
+     */
+    public static TemplatePack open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Template pack is too large: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        long modifiedTime = Files.getLastModifiedTime(path).toMillis();
+
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer.duplicate()));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a template pack: " + path);
+        }
+        int version = in.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported template pack version " + version + ": " + path);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt template pack: " + path);
+        }
+
+        Map<String, Slot> slots = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            int width = in.readInt();
+            int height = in.readInt();
+            int depth = in.readInt();
+            int blockCount = in.readInt();
+            long hash = in.readLong();
+            long offset = in.readLong();
+            int length = in.readInt();
+            if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+                throw new IOException("Corrupt template pack entry " + name + ": " + path);
+            }
+            TemplateIndex.Entry entry = new TemplateIndex.Entry(name, width, height, depth, blockCount, hash,
+                    modifiedTime, length);
+            slots.put(CustomStructureManager.sanitizeFileName(name), new Slot(entry, offset, length, hash));
+        }
+        return new TemplatePack(path, buffer, slots, modifiedTime);
+    }
+
+    /**
+     * Writes a pack containing the given templates, keyed by their names.
+     */
+    public static void write(Path path, Collection<StructureTemplate> templates) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<StructureTemplate> entries = new ArrayList<>();
+        List<byte[]> blobs = new ArrayList<>();
+        for (StructureTemplate template : templates) {
+            ByteArrayOutputStream blob = new ByteArrayOutputStream();
+            TemplateCodec.write(template, blob, true);
+            names.add(template.getName());
+            entries.add(template);
+            blobs.add(blob.toByteArray());
+        }
+
+        // Offsets are fixed width, so a first pass with zero offsets gives the table size
+        int tableSize = writeTable(OutputStream.nullOutputStream(), names, entries, blobs, 0);
+        Path tempPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                writeTable(out, names, entries, blobs, tableSize);
+                for (byte[] blob : blobs) {
+                    out.write(blob);
+                }
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private static int writeTable(OutputStream target, List<String> names, List<StructureTemplate> templates,
+                                  List<byte[]> blobs, long firstOffset) throws IOException {
+        DataOutputStream out = new DataOutputStream(target);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(names.size());
+        long offset = firstOffset;
+        for (int i = 0; i < names.size(); i++) {
+            StructureTemplate template = templates.get(i);
+            byte[] blob = blobs.get(i);
+            CRC32 crc = new CRC32();
+            crc.update(blob);
+            out.writeUTF(names.get(i));
+            out.writeInt(template.getWidth());
+            out.writeInt(template.getHeight());
+            out.writeInt(template.getDepth());
+            out.writeInt(template.getBlockCount());
+            out.writeLong(crc.getValue());
+            out.writeLong(offset);
+            out.writeInt(blob.length);
+            offset += blob.length;
+        }
+        out.flush();
+        return out.size();
+    }
+
+    /**
+     * Returns the names of the templates in this pack, in pack order. Like loose template files,
+     * names are sanitized, so they match {@link CustomStructureManager#loadStructure(String)}.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(new ArrayList<>(slots.keySet()));
+    }
+
+    public boolean contains(String name) {
+        return slots.containsKey(name);
+    }
+
+    /**
+     * Returns the table entry for a template, or null if the pack does not contain it.
+     */
+    public TemplateIndex.Entry getEntry(String name) {
+        Slot slot = slots.get(name);
+        return slot != null ? slot.entry() : null;
+    }
+
+    /**
+     * Decodes a template from the mapped file. Returns null if the pack does not contain it
+     * or its blob does not match the checksum in the table.
+     */
+    public StructureTemplate load(String name) throws IOException {
+        Slot slot = slots.get(name);
+        if (slot == null) {
+            return null;
+        }
+        // Each call gets its own view, so templates can be decoded from several threads at once
+        ByteBuffer blob = buffer.slice((int) slot.offset(), slot.length());
+        CRC32 crc = new CRC32();
+        crc.update(blob.duplicate());
+        if (crc.getValue() != slot.crc()) {
+            BuilderUIMod.LOGGER.error("Skipping template {} in {}: checksum mismatch, the pack is corrupt", name, path);
+            return null;
+        }
+        return TemplateCodec.read(new ByteBufferInputStream(blob));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
+    /**
+     * Reads a buffer without copying it to the heap first.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package dank.builderui.util;
+
+/**
+ * Block storage behind a {@link StructureTemplate}: maps linear indices inside the
+ * template volume to palette ids. Indices run x first, then z, then y.
+ */
+abstract class TemplateStorage {
+    /**
+     * Largest palette id either storage can hold.
+     */
+    static final int MAX_STATE_ID = 0xFFFE;
+
+    @FunctionalInterface
+    interface IndexVisitor {
+        void visit(int index, int stateId);
+    }
+
+    /**
+     * Returns the palette id at the index, or -1 if the position is empty.
+     */
+    abstract int get(int index);
+
+    abstract void set(int index, int stateId);
+
+    /**
+     * Returns the number of non-empty positions.
+     */
+    abstract int size();
+
+    /**
+     * Visits every non-empty position in ascending index order.
+     */
+    abstract void forEach(IndexVisitor visitor);
+
+    abstract TemplateStorage copy();
+
+    /**
+     * Brings the storage into a state where {@link #get(int)} does not modify it,
+     * so several threads can read it at once. Any write undoes this.
+     */
+    void prepareForConcurrentReads() {
+    }
+
+    /**
+     * Approximate heap used by this storage, in bytes.
+     */
+    abstract long getMemoryBytes();
+}
@@ -0,0 +1,116 @@
+package dank.builderui.util;
+
+import dank.builderui.BuilderUIMod;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.Locale;
+
+/**
+ * Admission control for the {@link BuildQueue}, driven by the server's average tick time.
+ *
+ * Above the configured MSPT threshold the server counts as busy: the queue's tick budget is
+ * halved every second down to a floor and builds larger than the configured limit are refused;
+ * smaller builds, undos and redos still start, at the reduced budget. Once the average drops
+ * clearly below the threshold the budget grows back a step per second. The hysteresis keeps
+ * builds from flapping around the threshold, and since the average includes the time builds
+ * take themselves, slowing down is self-correcting.
+ */
+public class TickHealth {
+    private static final int ADJUST_INTERVAL_TICKS = 20;
+    private static final double RECOVERY_MARGIN = 0.8;
+    private static final double RECOVERY_STEP = 0.1;
+
+    // Read from the client thread in singleplayer through BuildQueue.getBlocksPerSecond()
+    private static volatile double budgetScale = 1.0;
+    private static volatile boolean overloaded;
+    private static volatile float averageMspt;
+    private static int ticksUntilAdjust;
+
+    /**
+     * Samples the server's tick time. Called by the build queue every server tick.
+     */
+    static void update(MinecraftServer server) {
+        averageMspt = server.getTickTime();
+        if (--ticksUntilAdjust > 0) {
+            return;
+        }
+        ticksUntilAdjust = ADJUST_INTERVAL_TICKS;
+
+        int threshold = BuilderUISettings.get().getAdmissionMsptThreshold();
+        if (threshold <= 0) {
+            overloaded = false;
+            budgetScale = 1.0;
+            return;
+        }
+
+        double minScale = BuilderUISettings.get().getMinBudgetPercent() / 100.0;
+        if (averageMspt > threshold) {
+            if (!overloaded) {
+                BuilderUIMod.LOGGER.info("Average tick time is {} ms (threshold {} ms); slowing down builds",
+                        formatMspt(), threshold);
+            }
+            overloaded = true;
+            budgetScale = Math.max(minScale, budgetScale * 0.5);
+        } else if (averageMspt < threshold * RECOVERY_MARGIN) {
+            if (overloaded) {
+                BuilderUIMod.LOGGER.info("Average tick time is back to {} ms; resuming builds", formatMspt());
+            }
+            overloaded = false;
+            budgetScale = Math.min(1.0, budgetScale + RECOVERY_STEP);
+        }
+    }
+
+    /**
+     * Returns true while the server's tick time is above the threshold. Builds run slower and
+     * large builds are refused until it recovers.
+     */
+    public static boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /**
+     * Returns the share of the configured tick budget builds currently get, between the
+     * configured floor and 1.
+     */
+    public static double getBudgetScale() {
+        return budgetScale;
+    }
+
+    /**
+     * Returns the server's average tick time in milliseconds, as of the last tick.
+     */
+    public static float getAverageMspt() {
+        return averageMspt;
+    }
+
+    /**
+     * Returns true if a build of the given size is refused right now.
+     */
+    public static boolean isTooLarge(int blocks) {
+        int max = BuilderUISettings.get().getMaxBlocksUnderLoad();
+        return overloaded && max > 0 && blocks > max;
+    }
+
+    /**
+     * Returns the message shown when a build is refused for its size.
+     */
+    public static String getTooLargeMessage(String displayName, int blocks) {
+        return "Server is busy (" + formatMspt() + " ms/tick): " + displayName + " has " + blocks
+                + " blocks, only builds up to " + BuilderUISettings.get().getMaxBlocksUnderLoad()
+                + " are accepted until it recovers";
+    }
+
+    /**
+     * Forgets the measured load, e.g. when the server stops.
+     */
+    static void reset() {
+        overloaded = false;
+        budgetScale = 1.0;
+        averageMspt = 0;
+        ticksUntilAdjust = 0;
+    }
+
+    private static String formatMspt() {
+        return String.format(Locale.ROOT, "%.1f", averageMspt);
+    }
+}
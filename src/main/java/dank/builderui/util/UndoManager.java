@@ -1,80 +1,645 @@
 package dank.builderui.util;
 
+import dank.builderui.BuilderUIMod;
 import net.minecraft.block.BlockState;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
- * Manages undo functionality for structure building.
+ * Manages undo and redo for structure building.
  * Stores the original block states before building so they can be restored.
+ *
+ * Each player has an undo and a redo stack of packed {@link UndoSnapshot}s. Only the newest
+ * entry of each stack is kept in memory; older entries are written as compressed NBT to
+ * {@code <world>/builderui_undo/<player>/} and read back when they are undone. History is
+ * flushed to disk when the player leaves or the server stops, so it survives restarts.
+ *
+ * All file access runs on a single background thread, so the server thread never lists,
+ * compresses or reads history files. Entries left by an earlier session are listed in the
+ * background the first time a player's history is used; until then new actions are kept
+ * in memory and spilled as usual, and undo and redo jobs wait in the queue like a build whose
+ * plan is still being generated. A spilled entry stays in memory until its file is written,
+ * and the entry below the newest one is read ahead after every undo or redo. Since the thread
+ * runs file work in order, a rejoining player's listing always sees what was written on leave.
+ *
+ * Undo and redo run as {@link BuildJob}s on the {@link BuildQueue}, so restoring a large
+ * build is spread over ticks in chunk section order, reports progress and can be cancelled.
  */
 public class UndoManager {
-    private static final int MAX_UNDO_HISTORY = 10;
-    private static final Map<UUID, List<BuildAction>> undoHistory = new HashMap<>();
-    
+    private static final String STORAGE_DIR = "builderui_undo";
+    private static final Map<UUID, PlayerHistory> histories = new HashMap<>();
+    private static final ExecutorService IO_EXECUTOR = createIoExecutor();
+    private static MinecraftServer server;
+    private static Path storageRoot;
+
+    /**
+     * Points the undo store at the save directory of a starting server.
+     */
+    public static void onServerStarted(MinecraftServer startedServer) {
+        histories.clear();
+        server = startedServer;
+        storageRoot = startedServer.getSavePath(WorldSavePath.ROOT).resolve(STORAGE_DIR).normalize();
+    }
+
+    /**
+     * Writes all in-memory history to disk and forgets it.
+     */
+    public static void onServerStopped(MinecraftServer stoppedServer) {
+        for (PlayerHistory history : histories.values()) {
+            history.spillAll();
+        }
+        // The server is shutting down, so waiting for the writes here is fine
+        ioBarrier().join();
+        histories.clear();
+        server = null;
+        storageRoot = null;
+    }
+
+    /**
+     * Writes a leaving player's history to disk so it no longer uses memory.
+     * Their builds should be cancelled first, since finishing a build records history.
+     */
+    public static void onPlayerDisconnect(UUID playerId) {
+        PlayerHistory history = histories.remove(playerId);
+        if (history != null) {
+            history.spillAll();
+        }
+    }
+
     /**
-     * Records a build action for potential undo.
+     * Records a build action in the overworld for potential undo.
+     *
+     * @deprecated use {@link #recordAction(UUID, RegistryKey, UndoSnapshot)} so undo restores the right dimension
      */
+    @Deprecated
     public static void recordAction(UUID playerId, Map<BlockPos, BlockState> originalStates) {
-        List<BuildAction> history = undoHistory.computeIfAbsent(playerId, k -> new ArrayList<>());
-        
-        BuildAction action = new BuildAction(originalStates, System.currentTimeMillis());
-        history.add(action);
-        
-        // Keep only the last MAX_UNDO_HISTORY actions
-        if (history.size() > MAX_UNDO_HISTORY) {
-            history.remove(0);
+        recordAction(playerId, World.OVERWORLD, UndoSnapshot.of(originalStates));
+    }
+
+    /**
+     * Records a build action for potential undo. Starting a new build clears the redo stack.
+     */
+    public static void recordAction(UUID playerId, RegistryKey<World> dimension, UndoSnapshot snapshot) {
+        recordAction(playerId, dimension, null, snapshot);
+    }
+
+    /**
+     * Records a build action of a known structure type for potential undo.
+     * Starting a new build clears the redo stack.
+     */
+    public static void recordAction(UUID playerId, RegistryKey<World> dimension, BuildType buildType, UndoSnapshot snapshot) {
+        BuilderEvents.UndoRecord event = new BuilderEvents.UndoRecord();
+        event.begin();
+        PlayerHistory history = getHistory(playerId);
+        history.undo.push(new BuildAction(dimension, System.currentTimeMillis(), buildType, snapshot));
+        history.redo.clear();
+        BuildMetrics.recordUndoSnapshot(buildType, playerId, snapshot.getMemoryBytes());
+        if (event.shouldCommit()) {
+            event.buildType = buildType != null ? buildType.name() : null;
+            event.player = playerId.toString();
+            event.blockCount = snapshot.getBlockCount();
+            event.bytes = snapshot.getMemoryBytes();
+            event.commit();
         }
+
+        BuilderUIMod.LOGGER.debug("Recorded undo snapshot for {}: {} blocks, {} palette entries, {} runs, {} bytes (~{} bytes as a map)",
+                playerId, snapshot.getBlockCount(), snapshot.getPaletteSize(), snapshot.getRunCount(),
+                snapshot.getMemoryBytes(), snapshot.getMapEquivalentBytes());
     }
-    
+
     /**
-     * Undoes the last build action for the specified player.
-     * Returns true if undo was successful, false if there's nothing to undo.
+     * Queues an undo of the last build action for the specified player.
+     * The replaced blocks are moved to the redo stack once the undo finishes.
+     * Returns true if an undo was queued, false if there's nothing to undo.
      */
     public static boolean undo(UUID playerId, World world) {
-        List<BuildAction> history = undoHistory.get(playerId);
-        if (history == null || history.isEmpty()) {
+        return queueRestore(BuildJob.Kind.UNDO, playerId, world, canUndo(playerId));
+    }
+
+    /**
+     * Queues a redo of the last undone build action for the specified player.
+     * Returns true if a redo was queued, false if there's nothing to redo.
+     */
+    public static boolean redo(UUID playerId, World world) {
+        return queueRestore(BuildJob.Kind.REDO, playerId, world, canRedo(playerId));
+    }
+
+    private static boolean queueRestore(BuildJob.Kind kind, UUID playerId, World world, boolean hasHistory) {
+        BuilderEvents.UndoRequest event = new BuilderEvents.UndoRequest();
+        event.begin();
+        boolean queued = submitRestore(kind, playerId, world, hasHistory);
+        if (event.shouldCommit()) {
+            event.kind = kind.name();
+            event.player = playerId.toString();
+            event.queued = queued;
+            event.commit();
+        }
+        return queued;
+    }
+
+    private static boolean submitRestore(BuildJob.Kind kind, UUID playerId, World world, boolean hasHistory) {
+        if (!(world instanceof ServerWorld serverWorld)) {
+            return false;
+        }
+        // A queued build of this player will add history by the time the restore starts, and
+        // history still being listed from disk is only known once the job is ready
+        if (!hasHistory && isLoaded(playerId) && BuildQueue.getJobs(playerId).isEmpty()) {
             return false;
         }
-        
-        BuildAction lastAction = history.remove(history.size() - 1);
-        lastAction.restore(world);
+        BuildQueue.submit(BuildJob.restore(kind, serverWorld, playerId));
         return true;
     }
-    
+
     /**
-     * Clears the undo history for a specific player.
+     * Returns a future that completes on the server thread once the player's history from
+     * earlier sessions has been listed. Undo and redo jobs take their action only after that.
+     */
+    static CompletableFuture<Void> loadHistory(UUID playerId) {
+        return getHistory(playerId).loaded;
+    }
+
+    private static boolean isLoaded(UUID playerId) {
+        return getHistory(playerId).loaded.isDone();
+    }
+
+    /**
+     * Removes the action an undo or redo job is about to restore. The result completes once the
+     * action has been read from disk, with null if there is none or its file could not be read;
+     * {@link #hasHistory} then tells whether an older action is left to try.
+     */
+    static CompletableFuture<BuildAction> takeForRestore(UUID playerId, BuildJob.Kind kind) {
+        PlayerHistory history = getHistory(playerId);
+        return (kind == BuildJob.Kind.UNDO ? history.undo : history.redo).pop();
+    }
+
+    /**
+     * Returns true if the player has history that an undo or redo job of the given kind can restore.
+     */
+    static boolean hasHistory(UUID playerId, BuildJob.Kind kind) {
+        return kind == BuildJob.Kind.UNDO ? canUndo(playerId) : canRedo(playerId);
+    }
+
+    /**
+     * Pushes the blocks a finished undo or redo replaced onto the opposite stack.
+     */
+    static void finishRestore(UUID playerId, BuildJob.Kind kind, BuildAction restored, UndoSnapshot replaced) {
+        PlayerHistory history = getHistory(playerId);
+        BuildAction inverse = new BuildAction(restored.dimension, System.currentTimeMillis(), restored.buildType, replaced);
+        (kind == BuildJob.Kind.UNDO ? history.redo : history.undo).push(inverse);
+    }
+
+    /**
+     * Puts the action of a cancelled undo or redo back onto its stack, together with the blocks
+     * the cancelled job already replaced. Those positions already hold the restored state, so
+     * running the job again skips them; they are carried over into the inverse it records instead.
+     */
+    static void cancelRestore(UUID playerId, BuildJob.Kind kind, BuildAction restored, UndoSnapshot replaced) {
+        PlayerHistory history = getHistory(playerId);
+        BuildAction action = replaced != null && replaced.getBlockCount() > 0 ? restored.withReplaced(replaced) : restored;
+        (kind == BuildJob.Kind.UNDO ? history.undo : history.redo).push(action);
+        // A restore cancelled while its action was still being read can finish after the player left
+        if (server != null && server.getPlayerManager().getPlayer(playerId) == null) {
+            onPlayerDisconnect(playerId);
+        }
+    }
+
+    /**
+     * Clears the undo and redo history for a specific player, including spilled files.
      */
     public static void clearHistory(UUID playerId) {
-        undoHistory.remove(playerId);
+        PlayerHistory history = getHistory(playerId);
+        history.undo.clear();
+        history.redo.clear();
+        histories.remove(playerId);
     }
-    
+
     /**
-     * Returns true if the player has actions that can be undone.
+     * Returns true if the player has actions that can be undone. History left from an earlier
+     * session only counts once it has been listed in the background.
      */
     public static boolean canUndo(UUID playerId) {
-        List<BuildAction> history = undoHistory.get(playerId);
-        return history != null && !history.isEmpty();
+        return getHistory(playerId).undo.size() > 0;
     }
-    
+
+    /**
+     * Returns true if the player has undone actions that can be redone. History left from an
+     * earlier session only counts once it has been listed in the background.
+     */
+    public static boolean canRedo(UUID playerId) {
+        return getHistory(playerId).redo.size() > 0;
+    }
+
+    /**
+     * Returns the approximate heap used by a player's in-memory undo and redo snapshots, in bytes.
+     */
+    public static long getSnapshotBytes(UUID playerId) {
+        PlayerHistory history = histories.get(playerId);
+        if (history == null) {
+            return 0;
+        }
+        return history.undo.getMemoryBytes() + history.redo.getMemoryBytes();
+    }
+
+    private static PlayerHistory getHistory(UUID playerId) {
+        PlayerHistory history = histories.get(playerId);
+        if (history == null) {
+            history = new PlayerHistory(playerId);
+            histories.put(playerId, history);
+        }
+        return history;
+    }
+
+    /**
+     * Returns a future that completes once all file work queued so far has finished.
+     */
+    private static CompletableFuture<Void> ioBarrier() {
+        return CompletableFuture.runAsync(() -> {
+        }, IO_EXECUTOR);
+    }
+
+    private static ExecutorService createIoExecutor() {
+        // One thread keeps writes, reads and deletes of the same file in order
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "BuilderUI Undo I/O");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * The undo and redo stacks of one player.
+     */
+    private static class PlayerHistory {
+        private final HistoryStack undo;
+        private final HistoryStack redo;
+        private final CompletableFuture<Void> loaded;
+
+        PlayerHistory(UUID playerId) {
+            Path playerDir = storageRoot != null ? storageRoot.resolve(playerId.toString()) : null;
+            this.undo = new HistoryStack(playerDir != null ? playerDir.resolve("undo") : null);
+            this.redo = new HistoryStack(playerDir != null ? playerDir.resolve("redo") : null);
+            if (playerDir == null) {
+                this.loaded = CompletableFuture.completedFuture(null);
+                return;
+            }
+            this.loaded = CompletableFuture
+                    .supplyAsync(() -> new long[][] {undo.listSpilled(), redo.listSpilled()}, IO_EXECUTOR)
+                    .thenAcceptAsync(index -> {
+                        // A history dropped in the meantime was written back as is; its successor lists again
+                        if (histories.get(playerId) == this) {
+                            undo.applyIndex(index[0]);
+                            redo.applyIndex(index[1]);
+                        }
+                    }, server);
+        }
+
+        void spillAll() {
+            undo.spillAll();
+            redo.spillAll();
+        }
+    }
+
+    /**
+     * A bounded stack of actions whose older entries live on disk.
+     * Without a server save directory (e.g. before the server started) all entries stay in memory.
+     */
+    private static class HistoryStack {
+        private final Path directory;
+        private final Deque<Entry> entries = new ArrayDeque<>();
+        // Starts at the wall clock, so this session's files sort after earlier ones without listing them first
+        private long nextSequence = System.currentTimeMillis();
+        private boolean loaded;
+        private boolean discardIndex;
+
+        HistoryStack(Path directory) {
+            this.directory = directory;
+            this.loaded = directory == null;
+        }
+
+        /**
+         * Returns the sequence numbers of entries spilled in an earlier session, oldest first.
+         * Runs on the I/O thread.
+         */
+        private long[] listSpilled() {
+            if (!Files.isDirectory(directory)) {
+                return new long[0];
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                return files.map(path -> path.getFileName().toString())
+                        .filter(name -> name.endsWith(".dat"))
+                        .mapToLong(name -> parseSequence(name.substring(0, name.length() - 4)))
+                        .filter(sequence -> sequence >= 0)
+                        .sorted()
+                        .toArray();
+            } catch (IOException | RuntimeException e) {
+                BuilderUIMod.LOGGER.error("Failed to read undo history in {}", directory, e);
+                return new long[0];
+            }
+        }
+
+        /**
+         * Puts the entries of earlier sessions below the ones recorded since the history was created.
+         */
+        void applyIndex(long[] sequences) {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            if (discardIndex) {
+                // Cleared before the listing arrived; the files are already being deleted
+                return;
+            }
+            for (int i = sequences.length - 1; i >= 0; i--) {
+                entries.addFirst(new Entry(sequences[i], null));
+            }
+            if (sequences.length > 0) {
+                nextSequence = Math.max(nextSequence, sequences[sequences.length - 1] + 1);
+            }
+            trim();
+        }
+
+        void push(BuildAction action) {
+            Entry newest = entries.peekLast();
+            if (newest != null) {
+                spill(newest);
+            }
+            entries.addLast(new Entry(nextSequence++, action));
+            trim();
+        }
+
+        /**
+         * Removes the newest action. The result completes once it has been read from disk,
+         * with null if the stack is empty or the file cannot be read.
+         */
+        CompletableFuture<BuildAction> pop() {
+            Entry entry = entries.pollLast();
+            if (entry == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            BuildAction action = entry.action;
+            CompletableFuture<BuildAction> result = action != null ? CompletableFuture.completedFuture(action) : load(entry);
+            delete(entry);
+            // The next undo or redo most likely needs the entry below
+            Entry next = entries.peekLast();
+            if (next != null && next.action == null) {
+                load(next);
+            }
+            return result;
+        }
+
+        void clear() {
+            for (Entry entry : entries) {
+                delete(entry);
+            }
+            entries.clear();
+            if (!loaded) {
+                // Entries of earlier sessions are not known yet, so remove whatever is on disk
+                discardIndex = true;
+                deleteSpilled();
+            }
+        }
+
+        void spillAll() {
+            for (Entry entry : entries) {
+                spill(entry);
+            }
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        long getMemoryBytes() {
+            long bytes = 0;
+            for (Entry entry : entries) {
+                BuildAction action = entry.action;
+                if (action != null) {
+                    bytes += action.getMemoryBytes();
+                }
+            }
+            return bytes;
+        }
+
+        private void trim() {
+            int maxHistory = BuilderUISettings.get().getMaxUndoHistory();
+            while (entries.size() > maxHistory) {
+                delete(entries.pollFirst());
+            }
+        }
+
+        private Path file(Entry entry) {
+            return directory.resolve(entry.sequence + ".dat");
+        }
+
+        /**
+         * Writes an entry to disk in the background. It stays in memory until the file is complete.
+         */
+        private void spill(Entry entry) {
+            BuildAction action = entry.action;
+            if (action == null || directory == null || entry.spilling) {
+                return;
+            }
+            entry.spilling = true;
+            IO_EXECUTOR.execute(() -> {
+                try {
+                    Files.createDirectories(directory);
+                    Path file = file(entry);
+                    Path temp = directory.resolve(entry.sequence + ".tmp");
+                    try (OutputStream out = Files.newOutputStream(temp)) {
+                        NbtIo.writeCompressed(action.toNbt(), out);
+                    }
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    entry.action = null;
+                } catch (IOException | RuntimeException e) {
+                    // Keep the action in memory rather than losing it
+                    BuilderUIMod.LOGGER.error("Failed to write undo history to {}", directory, e);
+                }
+            });
+        }
+
+        /**
+         * Starts reading a spilled entry, or returns the read already in progress.
+         */
+        private CompletableFuture<BuildAction> load(Entry entry) {
+            if (entry.reading == null) {
+                entry.reading = CompletableFuture.supplyAsync(() -> read(entry), IO_EXECUTOR);
+            }
+            return entry.reading;
+        }
+
+        private BuildAction read(Entry entry) {
+            if (directory == null) {
+                return null;
+            }
+            try (InputStream in = Files.newInputStream(file(entry))) {
+                return BuildAction.fromNbt(NbtIo.readCompressed(in));
+            } catch (IOException | RuntimeException e) {
+                BuilderUIMod.LOGGER.error("Failed to read undo history from {}", file(entry), e);
+                return null;
+            }
+        }
+
+        private void delete(Entry entry) {
+            if (directory == null) {
+                return;
+            }
+            // Queued behind any write of the same entry
+            IO_EXECUTOR.execute(() -> {
+                try {
+                    Files.deleteIfExists(file(entry));
+                } catch (IOException e) {
+                    BuilderUIMod.LOGGER.warn("Failed to delete undo history file {}", file(entry), e);
+                }
+            });
+        }
+
+        private void deleteSpilled() {
+            IO_EXECUTOR.execute(() -> {
+                for (long sequence : listSpilled()) {
+                    Path file = directory.resolve(sequence + ".dat");
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        BuilderUIMod.LOGGER.warn("Failed to delete undo history file {}", file, e);
+                    }
+                }
+            });
+        }
+
+        private static long parseSequence(String name) {
+            try {
+                return Long.parseLong(name);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * A history slot; {@code action} is null once the entry only exists on disk.
+     * It is cleared by the I/O thread, all other fields belong to the server thread.
+     */
+    private static class Entry {
+        private final long sequence;
+        private volatile BuildAction action;
+        private boolean spilling;
+        private CompletableFuture<BuildAction> reading;
+
+        Entry(long sequence, BuildAction action) {
+            this.sequence = sequence;
+            this.action = action;
+        }
+    }
+
     /**
      * Represents a single build action that can be undone.
      */
-    private static class BuildAction {
-        private final Map<BlockPos, BlockState> originalStates;
+    static class BuildAction {
+        private final RegistryKey<World> dimension;
+        private final BuildType buildType;
+        private final UndoSnapshot snapshot;
+        private final UndoSnapshot replaced;
         private final long timestamp;
-        
-        BuildAction(Map<BlockPos, BlockState> originalStates, long timestamp) {
-            this.originalStates = new HashMap<>(originalStates);
+
+        BuildAction(RegistryKey<World> dimension, long timestamp, BuildType buildType, UndoSnapshot snapshot) {
+            this(dimension, timestamp, buildType, snapshot, null);
+        }
+
+        private BuildAction(RegistryKey<World> dimension, long timestamp, BuildType buildType, UndoSnapshot snapshot,
+                            UndoSnapshot replaced) {
+            this.dimension = dimension;
+            this.buildType = buildType;
+            this.snapshot = snapshot;
+            this.replaced = replaced;
             this.timestamp = timestamp;
         }
-        
-        void restore(World world) {
-            for (Map.Entry<BlockPos, BlockState> entry : originalStates.entrySet()) {
-                world.setBlockState(entry.getKey(), entry.getValue());
+
+        /**
+         * Returns a copy that remembers the blocks a cancelled restore of this action replaced.
+         * The given snapshot must already include any blocks replaced by earlier attempts.
+         */
+        BuildAction withReplaced(UndoSnapshot replaced) {
+            return new BuildAction(dimension, timestamp, buildType, snapshot, replaced);
+        }
+
+        RegistryKey<World> getDimension() {
+            return dimension;
+        }
+
+        /**
+         * Returns the structure type that was built, or null if it is unknown.
+         */
+        BuildType getBuildType() {
+            return buildType;
+        }
+
+        UndoSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Returns the blocks that cancelled restores of this action already replaced, or null if there are none.
+         */
+        UndoSnapshot getReplaced() {
+            return replaced;
+        }
+
+        long getMemoryBytes() {
+            return snapshot.getMemoryBytes() + (replaced != null ? replaced.getMemoryBytes() : 0);
+        }
+
+        NbtCompound toNbt() {
+            NbtCompound nbt = new NbtCompound();
+            nbt.putString("Dimension", dimension.getValue().toString());
+            nbt.putLong("Timestamp", timestamp);
+            if (buildType != null) {
+                nbt.putString("BuildType", buildType.name());
+            }
+            nbt.put("Snapshot", snapshot.toNbt());
+            if (replaced != null) {
+                nbt.put("Replaced", replaced.toNbt());
+            }
+            return nbt;
+        }
+
+        static BuildAction fromNbt(NbtCompound nbt) {
+            RegistryKey<World> dimension = RegistryKey.of(RegistryKeys.WORLD, new Identifier(nbt.getString("Dimension")));
+            BuildType buildType = null;
+            if (nbt.contains("BuildType")) {
+                try {
+                    buildType = BuildType.valueOf(nbt.getString("BuildType"));
+                } catch (IllegalArgumentException e) {
+                    // Unknown type from a newer or older version; restore it anyway
+                }
             }
+            UndoSnapshot replaced = nbt.contains("Replaced") ? UndoSnapshot.fromNbt(nbt.getCompound("Replaced")) : null;
+            return new BuildAction(dimension, nbt.getLong("Timestamp"), buildType,
+                    UndoSnapshot.fromNbt(nbt.getCompound("Snapshot")), replaced);
         }
     }
 }
@@ -0,0 +1,263 @@
+package dank.builderui.util;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact record of the block states a build replaced.
+ *
+ * Positions are stored as int offsets inside the snapshot's bounding box, sorted so that
+ * neighbouring blocks sit next to each other. States are stored as a small palette plus
+ * run-length encoded palette indices, which collapses the long runs of air, stone and dirt
+ * a build usually replaces. A block costs about 4 bytes instead of a map entry.
+ */
+public class UndoSnapshot {
+    /**
+     * Rough heap cost of one entry in a {@code HashMap<BlockPos, BlockState>}:
+     * the node, the BlockPos key and the table slot.
+     */
+    public static final int MAP_ENTRY_BYTES = 80;
+
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int sizeX;
+    private final int sizeZ;
+    private final int[] offsets;
+    private final BlockState[] palette;
+    private final int[] runPaletteIndices;
+    private final int[] runLengths;
+
+    private UndoSnapshot(int minX, int minY, int minZ, int sizeX, int sizeZ, int[] offsets,
+                         BlockState[] palette, int[] runPaletteIndices, int[] runLengths) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeZ = sizeZ;
+        this.offsets = offsets;
+        this.palette = palette;
+        this.runPaletteIndices = runPaletteIndices;
+        this.runLengths = runLengths;
+    }
+
+    /**
+     * Receives the blocks of a snapshot.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(int x, int y, int z, BlockState state);
+    }
+
+    /**
+     * Visits every recorded block in storage order.
+     */
+    public void forEach(Visitor visitor) {
+        int block = 0;
+        for (int run = 0; run < runLengths.length; run++) {
+            BlockState state = palette[runPaletteIndices[run]];
+            for (int end = block + runLengths[run]; block < end; block++) {
+                int offset = offsets[block];
+                int x = offset % sizeX;
+                int z = (offset / sizeX) % sizeZ;
+                int y = offset / sizeX / sizeZ;
+                visitor.visit(minX + x, minY + y, minZ + z, state);
+            }
+        }
+    }
+
+    public int getBlockCount() {
+        return offsets.length;
+    }
+
+    public int getPaletteSize() {
+        return palette.length;
+    }
+
+    public int getRunCount() {
+        return runLengths.length;
+    }
+
+    /**
+     * Approximate heap used by this snapshot, in bytes.
+     */
+    public long getMemoryBytes() {
+        return 64L + 4L * offsets.length + 8L * runLengths.length + 8L * palette.length;
+    }
+
+    /**
+     * Approximate heap the same blocks would use as a {@code HashMap<BlockPos, BlockState>}.
+     */
+    public long getMapEquivalentBytes() {
+        return (long) MAP_ENTRY_BYTES * offsets.length;
+    }
+
+    /**
+     * Serializes this snapshot. Offsets are delta-encoded so they compress well on disk.
+     */
+    public NbtCompound toNbt() {
+        NbtCompound nbt = new NbtCompound();
+        nbt.putIntArray("Origin", new int[]{minX, minY, minZ});
+        nbt.putIntArray("Size", new int[]{sizeX, sizeZ});
+
+        int[] deltas = new int[offsets.length];
+        int previous = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            deltas[i] = offsets[i] - previous;
+            previous = offsets[i];
+        }
+        nbt.putIntArray("Offsets", deltas);
+
+        NbtList paletteList = new NbtList();
+        for (BlockState state : palette) {
+            paletteList.add(NbtHelper.fromBlockState(state));
+        }
+        nbt.put("Palette", paletteList);
+        nbt.putIntArray("RunPalette", runPaletteIndices);
+        nbt.putIntArray("RunLengths", runLengths);
+        return nbt;
+    }
+
+    /**
+     * Reads a snapshot written by {@link #toNbt()}.
+     */
+    public static UndoSnapshot fromNbt(NbtCompound nbt) {
+        int[] origin = nbt.getIntArray("Origin");
+        int[] size = nbt.getIntArray("Size");
+
+        int[] offsets = nbt.getIntArray("Offsets");
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+
+        NbtList paletteList = nbt.getList("Palette", NbtElement.COMPOUND_TYPE);
+        BlockState[] palette = new BlockState[paletteList.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = NbtHelper.toBlockState(Registries.BLOCK.getReadOnlyWrapper(), paletteList.getCompound(i));
+        }
+
+        return new UndoSnapshot(origin[0], origin[1], origin[2], size[0], size[1], offsets, palette,
+                nbt.getIntArray("RunPalette"), nbt.getIntArray("RunLengths"));
+    }
+
+    /**
+     * Creates a snapshot from a position map, e.g. one recorded by an addon.
+     */
+    public static UndoSnapshot of(Map<BlockPos, BlockState> states) {
+        Builder builder = new Builder();
+        states.forEach((pos, state) -> builder.add(pos.asLong(), state));
+        return builder.build();
+    }
+
+    /**
+     * Collects blocks for a snapshot. If a position is added more than once,
+     * the first state wins, since that is the state before the build touched it.
+     */
+    public static class Builder {
+        private long[] positions = new long[256];
+        private BlockState[] states = new BlockState[256];
+        private int size;
+
+        public void add(long packedPos, BlockState state) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            positions[size] = packedPos;
+            states[size] = state;
+            size++;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public UndoSnapshot build() {
+            if (size == 0) {
+                return new UndoSnapshot(0, 0, 0, 1, 1, new int[0], new BlockState[0], new int[0], new int[0]);
+            }
+
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                long pos = positions[i];
+                minX = Math.min(minX, BlockPos.unpackLongX(pos));
+                minY = Math.min(minY, BlockPos.unpackLongY(pos));
+                minZ = Math.min(minZ, BlockPos.unpackLongZ(pos));
+                maxX = Math.max(maxX, BlockPos.unpackLongX(pos));
+                maxY = Math.max(maxY, BlockPos.unpackLongY(pos));
+                maxZ = Math.max(maxZ, BlockPos.unpackLongZ(pos));
+            }
+            int sizeX = maxX - minX + 1;
+            int sizeY = maxY - minY + 1;
+            int sizeZ = maxZ - minZ + 1;
+            if ((long) sizeX * sizeY * sizeZ > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Undo snapshot volume is too large: " + sizeX + "x" + sizeY + "x" + sizeZ);
+            }
+
+            // Sort by (offset, insertion order) so duplicates keep their first state
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                long pos = positions[i];
+                int offset = ((BlockPos.unpackLongY(pos) - minY) * sizeZ + (BlockPos.unpackLongZ(pos) - minZ)) * sizeX
+                        + (BlockPos.unpackLongX(pos) - minX);
+                keys[i] = ((long) offset << 32) | i;
+            }
+            Arrays.sort(keys);
+
+            int[] offsets = new int[size];
+            int[] runPaletteIndices = new int[16];
+            int[] runLengths = new int[16];
+            int blocks = 0;
+            int runs = 0;
+            List<BlockState> palette = new ArrayList<>();
+            Reference2IntOpenHashMap<BlockState> paletteIds = new Reference2IntOpenHashMap<>();
+            paletteIds.defaultReturnValue(-1);
+            int previousOffset = -1;
+
+            for (long key : keys) {
+                int offset = (int) (key >>> 32);
+                if (offset == previousOffset) {
+                    continue;
+                }
+                previousOffset = offset;
+                offsets[blocks++] = offset;
+
+                BlockState state = states[(int) key];
+                int id = paletteIds.getInt(state);
+                if (id < 0) {
+                    id = palette.size();
+                    palette.add(state);
+                    paletteIds.put(state, id);
+                }
+
+                if (runs > 0 && runPaletteIndices[runs - 1] == id) {
+                    runLengths[runs - 1]++;
+                } else {
+                    if (runs == runLengths.length) {
+                        runPaletteIndices = Arrays.copyOf(runPaletteIndices, runs * 2);
+                        runLengths = Arrays.copyOf(runLengths, runs * 2);
+                    }
+                    runPaletteIndices[runs] = id;
+                    runLengths[runs] = 1;
+                    runs++;
+                }
+            }
+
+            return new UndoSnapshot(minX, minY, minZ, sizeX, sizeZ, Arrays.copyOf(offsets, blocks),
+                    palette.toArray(new BlockState[0]), Arrays.copyOf(runPaletteIndices, runs),
+                    Arrays.copyOf(runLengths, runs));
+        }
+    }
+}